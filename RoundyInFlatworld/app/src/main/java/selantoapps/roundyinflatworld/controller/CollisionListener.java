@@ -1,7 +0,0 @@
-package selantoapps.roundyinflatworld.controller;
-
-import selantoapps.roundyinflatworld.model.Roundy;
-
-interface CollisionListener {
-    void onCollisionFound(Roundy roundyA, Roundy roundyB);
-}
@@ -0,0 +1,105 @@
+package selantoapps.roundyinflatworld.controller;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An input of the ui, sent by {@link GameEngine} to its {@link EngineThread}.
+ * <p>
+ * Commands are immutable but for the state handed back by a {@link #SAVE}, so any other command
+ * can be created once and sent again and again.
+ */
+final class EngineCommand {
+
+    /**
+     * Start a game from {@link #state}, or a new one if null or invalid.
+     */
+    static final int START = 0;
+    /**
+     * Click the roundy {@link #roundyId}.
+     */
+    static final int CLICK = 1;
+    /**
+     * Add the roundy {@link #roundyId} to the grid.
+     */
+    static final int ADD_ROUNDY = 2;
+    static final int RESTART = 3;
+    /**
+     * The chain of the last click has been played on screen.
+     */
+    static final int CHAIN_ANIMATION_END = 4;
+    /**
+     * Save the state of the game and hand it back through {@link #awaitSavedState(long)}.
+     */
+    static final int SAVE = 5;
+    /**
+     * Stop recording and end the thread.
+     */
+    static final int SHUTDOWN = 6;
+    /**
+     * Publish the hints after each move if {@link #enabled}, stop publishing them otherwise.
+     */
+    static final int SHOW_HINTS = 7;
+
+    final int type;
+
+    final int roundyId;
+
+    final byte[] state;
+
+    final boolean enabled;
+
+    private final CountDownLatch saved;
+
+    private volatile byte[] savedState;
+
+    private EngineCommand(int type, int roundyId, byte[] state, boolean enabled) {
+        this.type = type;
+        this.roundyId = roundyId;
+        this.state = state;
+        this.enabled = enabled;
+        saved = type == SAVE ? new CountDownLatch(1) : null;
+    }
+
+    static EngineCommand start(byte[] state) {
+        return new EngineCommand(START, -1, state, false);
+    }
+
+    static EngineCommand click(int roundyId) {
+        return new EngineCommand(CLICK, roundyId, null, false);
+    }
+
+    static EngineCommand addRoundy(int roundyId) {
+        return new EngineCommand(ADD_ROUNDY, roundyId, null, false);
+    }
+
+    static EngineCommand showHints(boolean enabled) {
+        return new EngineCommand(SHOW_HINTS, -1, null, enabled);
+    }
+
+    static EngineCommand of(int type) {
+        return new EngineCommand(type, -1, null, false);
+    }
+
+    /**
+     * Called by the engine thread once the state of a {@link #SAVE} is ready.
+     */
+    void setSavedState(byte[] savedState) {
+        this.savedState = savedState;
+        saved.countDown();
+    }
+
+    /**
+     * @return the state saved, null if the game was not started or the engine did not answer in time
+     */
+    byte[] awaitSavedState(long timeoutMillis) {
+        try {
+            if (saved.await(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                return savedState;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+}
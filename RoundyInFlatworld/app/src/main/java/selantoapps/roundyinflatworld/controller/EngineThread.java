@@ -0,0 +1,448 @@
+package selantoapps.roundyinflatworld.controller;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+import selantoapps.roundyinflatworld.R;
+import selantoapps.roundyinflatworld.model.Chain;
+import selantoapps.roundyinflatworld.model.Roundy;
+import selantoapps.roundyinflatworld.settings.Direction;
+import selantoapps.roundyinflatworld.utils.LatencyHistogram;
+import selantoapps.roundyinflatworld.utils.LogUtility;
+import selantoapps.roundyinflatworld.utils.MetricsRegistry;
+import selantoapps.roundyinflatworld.utils.SpscQueue;
+
+/**
+ * The thread which owns the {@link Flatworld} of a {@link GameEngine}: nothing else touches the
+ * world once the thread is started.
+ * <p>
+ * The thread takes the {@link EngineCommand}s of the ui from one queue, parking while it is empty,
+ * and answers with {@link RenderDelta}s on another one, calling the deltasPublished runnable after
+ * each of them so that the ui drains the queue. Both queues are {@link SpscQueue}s, so neither side
+ * ever waits for the other one's lock.
+ * <p>
+ * Clicks are accepted only when the game is {@link GameState#READY}: from a click which moves a chain
+ * to the {@link EngineCommand#CHAIN_ANIMATION_END} of its animation the game is
+ * {@link GameState#PLAYING_CHAIN} and answers clicks and restarts with a busy message.
+ */
+final class EngineThread extends Thread {
+
+    private static final String TAG = GameEngine.class.getSimpleName();
+
+    // saved in the snapshot when the last roundy is still to be added by the user
+    private static final int NEW_ROUNDY_PENDING = 1;
+
+    // happiness shown by a roundy: neither for the new one, until it becomes happy or not
+    private static final byte SHOWN_NEITHER = 0;
+    private static final byte SHOWN_HAPPY = 1;
+    private static final byte SHOWN_UNHAPPY = 2;
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    // how long to wait for the ui to drain a full queue of deltas
+    private static final long FULL_QUEUE_PARK_NANOS = 100000;
+
+    enum GameState {
+        NOT_STARTED,
+        READY,
+        PLAYING_CHAIN,
+        STOPPED
+    }
+
+    private final Flatworld flatworld;
+    private final MetricsRegistry metrics;
+    private final LatencyHistogram clickLatency;
+    private final SpscQueue<EngineCommand> commands;
+    private final SpscQueue<RenderDelta> deltas;
+    private final Runnable deltasPublished;
+    private final int roundyCount;
+    private final OutcomeCache outcomeCache;
+
+    // deltas published on every click, created once
+    private final RenderDelta busyMessage = RenderDelta.message(R.string.busy);
+    private final RenderDelta noCollisionsMessage = RenderDelta.message(R.string.no_collisions);
+    private final RenderDelta hintsCleared = RenderDelta.hintsCleared();
+
+    // the chain of the world is overwritten by the next click, so each chain played is copied in
+    // turn into one of two chains: a click is resolved only once the previous chain was played,
+    // so the ui is done with the chain before the previous one
+    private final RenderDelta[] chainDeltas = new RenderDelta[2];
+    private int nextChainDelta;
+
+    private GameState state = GameState.NOT_STARTED;
+
+    private boolean newRoundyPending;
+
+    private boolean hintsEnabled;
+
+    // happiness of each roundy as last published, by id
+    private final byte[] shownHappiness;
+
+    // roundies whose happiness changed in the model since the last diff, each one listed once
+    private final int[] dirtyIds;
+    private final boolean[] dirty;
+    private int dirtyCount;
+
+    // hints of each roundy by id, as found by the last publishHints and as last published
+    private final int[] hintMasks;
+    private final boolean[] endangered;
+    private final int[] shownHintMasks;
+    private final boolean[] shownEndangered;
+
+    EngineThread(Flatworld flatworld, MetricsRegistry metrics, SpscQueue<EngineCommand> commands,
+                 SpscQueue<RenderDelta> deltas, Runnable deltasPublished) {
+        super("GameEngine");
+        this.flatworld = flatworld;
+        this.metrics = metrics;
+        this.commands = commands;
+        this.deltas = deltas;
+        this.deltasPublished = deltasPublished;
+        roundyCount = flatworld.getRoundyCount();
+        clickLatency = metrics.histogram(MetricsRegistry.CLICK_HANDLING);
+        outcomeCache = new OutcomeCache(flatworld);
+        for (int i = 0; i < chainDeltas.length; i++) {
+            chainDeltas[i] = RenderDelta.chain(new Chain(roundyCount));
+        }
+        flatworld.setBoardListener(outcomeCache);
+        shownHappiness = new byte[roundyCount];
+        dirtyIds = new int[roundyCount];
+        dirty = new boolean[roundyCount];
+        hintMasks = new int[roundyCount];
+        endangered = new boolean[roundyCount];
+        shownHintMasks = new int[roundyCount];
+        shownEndangered = new boolean[roundyCount];
+        flatworld.setHappinessListener(new HappinessListener() {
+            @Override
+            public void onHappy(Roundy roundy) {
+                markDirty(roundy.getId());
+            }
+
+            @Override
+            public void onUnHappy(Roundy roundy) {
+                markDirty(roundy.getId());
+            }
+        });
+    }
+
+    @Override
+    public void run() {
+        while (state != GameState.STOPPED) {
+            EngineCommand command = commands.poll();
+            if (command == null) {
+                // woken up by the ui after each command, or spuriously
+                LockSupport.park(this);
+            } else {
+                handle(command);
+            }
+        }
+    }
+
+    private void handle(EngineCommand command) {
+        switch (command.type) {
+            case EngineCommand.START:
+                if (command.state == null || !restoreState(command.state)) {
+                    newGame();
+                }
+                break;
+            case EngineCommand.CLICK:
+                click(command.roundyId);
+                break;
+            case EngineCommand.ADD_ROUNDY:
+                addRoundy(command.roundyId);
+                break;
+            case EngineCommand.RESTART:
+                restart();
+                break;
+            case EngineCommand.CHAIN_ANIMATION_END:
+                state = GameState.READY;
+                publishHappinessChanges();
+                publishHints();
+                break;
+            case EngineCommand.SHOW_HINTS:
+                if (command.enabled != hintsEnabled) {
+                    hintsEnabled = command.enabled;
+                    if (!hintsEnabled) {
+                        clearHints();
+                    } else if (state == GameState.READY) {
+                        // otherwise at the end of the chain
+                        publishHints();
+                    }
+                }
+                break;
+            case EngineCommand.SAVE:
+                command.setSavedState(state == GameState.NOT_STARTED ? null
+                        : FlatworldSnapshot.save(flatworld, newRoundyPending ? NEW_ROUNDY_PENDING : 0));
+                break;
+            case EngineCommand.SHUTDOWN:
+                stopRecording();
+                state = GameState.STOPPED;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown command " + command.type);
+        }
+    }
+
+    private void newGame() {
+        flatworld.init();
+        int[] ids = new int[roundyCount - 1]; //-1 because last roundy is added only on user action
+        int[] cellIndexes = new int[ids.length];
+        for (int id = 0; id < ids.length; id++) {
+            ids[id] = id;
+            cellIndexes[id] = flatworld.placeRoundy(id).getCellIndex();
+            // drawn green
+            shownHappiness[id] = SHOWN_HAPPY;
+        }
+        clearDirty();
+        newRoundyPending = true;
+        state = GameState.READY;
+        publish(RenderDelta.reset(ids, cellIndexes, null, true));
+        publishHints();
+    }
+
+    /**
+     * Resume the game from a state saved by {@link EngineCommand#SAVE}. A chain playing when the
+     * state was saved is already resolved in it, so its roundies are drawn where they stopped.
+     *
+     * @return false if the state could not be restored and the game was left as it was
+     */
+    private boolean restoreState(byte[] savedState) {
+        int userFlags;
+        try {
+            // validated, since the state may have been saved by another version of the app
+            userFlags = FlatworldSnapshot.restore(flatworld, savedState, true);
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Cannot restore the game", e);
+            return false;
+        }
+        int count = 0;
+        for (Roundy roundy : flatworld.getRoundies()) {
+            if (roundy != null) {
+                count++;
+            }
+        }
+        int[] ids = new int[count];
+        int[] cellIndexes = new int[count];
+        boolean[] happy = new boolean[count];
+        int i = 0;
+        for (Roundy roundy : flatworld.getRoundies()) {
+            if (roundy != null) {
+                ids[i] = roundy.getId();
+                cellIndexes[i] = roundy.getCellIndex();
+                // roundies never hit are not happy in the model but green on screen
+                happy[i] = !roundy.hasCollisions();
+                shownHappiness[roundy.getId()] = happy[i] ? SHOWN_HAPPY : SHOWN_UNHAPPY;
+                i++;
+            }
+        }
+        clearDirty();
+        newRoundyPending = (userFlags & NEW_ROUNDY_PENDING) != 0;
+        state = GameState.READY;
+        publish(RenderDelta.reset(ids, cellIndexes, happy, newRoundyPending));
+        publishHints();
+        return true;
+    }
+
+    private void restart() {
+        if (state == GameState.PLAYING_CHAIN) {
+            publish(busyMessage);
+            return;
+        }
+        dumpTrace();
+        if (flatworld.getReplayLog() != null) {
+            // the end of the game, for the player to check
+            flatworld.getReplayLog().recordState(flatworld);
+        }
+        newGame();
+    }
+
+    private void click(int id) {
+        if (state == GameState.PLAYING_CHAIN) {
+            publish(busyMessage);
+            return;
+        }
+        if (state != GameState.READY || flatworld.getRoundy(id) == null) {
+            // a click on a view of a game replaced in the meantime
+            return;
+        }
+        long start = System.nanoTime();
+        Chain chain = flatworld.click(id);
+        if (chain == null) {
+            publish(noCollisionsMessage);
+        } else {
+            state = GameState.PLAYING_CHAIN;
+            if (hintsEnabled) {
+                clearHints();
+            }
+            // the roundies of the chain are drawn as on the move until the end of the chain, when
+            // the survivors are published again even if their happiness did not change
+            for (int i = 0; i < chain.getLength() - 1; i++) {
+                int chainId = chain.getRoundyId(i);
+                shownHappiness[chainId] = SHOWN_NEITHER;
+                markDirty(chainId);
+            }
+            RenderDelta chainDelta = chainDeltas[nextChainDelta];
+            nextChainDelta = (nextChainDelta + 1) % chainDeltas.length;
+            chainDelta.chain.set(chain);
+            publish(chainDelta);
+        }
+        clickLatency.recordSince(start);
+    }
+
+    private void addRoundy(int id) {
+        if (!newRoundyPending) {
+            return;
+        }
+        newRoundyPending = false;
+        // drawn yellow
+        shownHappiness[id] = SHOWN_NEITHER;
+        publish(RenderDelta.roundyAdded(id, flatworld.addRoundy(id).getCellIndex()));
+        if (state == GameState.READY) {
+            // otherwise at the end of the chain, not to change the roundies while they move
+            publishHappinessChanges();
+            publishHints();
+        }
+    }
+
+    private void markDirty(int id) {
+        if (!dirty[id]) {
+            dirty[id] = true;
+            dirtyIds[dirtyCount++] = id;
+        }
+    }
+
+    private void clearDirty() {
+        for (int i = 0; i < dirtyCount; i++) {
+            dirty[dirtyIds[i]] = false;
+        }
+        dirtyCount = 0;
+    }
+
+    /**
+     * Publish the roundies whose happiness differs from the one last published: a roundy made
+     * unhappy twice, or unhappy and then happy again, is published once or not at all, and the
+     * roundies not touched by the model are not even looked at.
+     */
+    private void publishHappinessChanges() {
+        int count = 0;
+        for (int i = 0; i < dirtyCount; i++) {
+            int id = dirtyIds[i];
+            dirty[id] = false;
+            Roundy roundy = flatworld.getRoundy(id);
+            if (roundy == null) {
+                continue;
+            }
+            byte happiness = roundy.isHappy() ? SHOWN_HAPPY : SHOWN_UNHAPPY;
+            if (happiness != shownHappiness[id]) {
+                shownHappiness[id] = happiness;
+                // compacted in place, the ids before i are not read anymore
+                dirtyIds[count++] = id;
+            }
+        }
+        dirtyCount = 0;
+        if (count == 0) {
+            return;
+        }
+        int[] ids = new int[count];
+        boolean[] happy = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = dirtyIds[i];
+            happy[i] = shownHappiness[ids[i]] == SHOWN_HAPPY;
+        }
+        publish(RenderDelta.happiness(ids, happy));
+    }
+
+    /**
+     * Publish, if enabled, where each roundy can be clicked towards and which roundies may die,
+     * for the roundies whose hints changed since the last ones published. The outcomes come from
+     * the {@link OutcomeCache}, which computes again only the ones on the lines changed by the last
+     * moves.
+     */
+    private void publishHints() {
+        if (!hintsEnabled) {
+            return;
+        }
+        Arrays.fill(hintMasks, 0);
+        Arrays.fill(endangered, false);
+        for (Roundy roundy : flatworld.getRoundies()) {
+            if (roundy == null || !roundy.hasCollisions()) {
+                continue;
+            }
+            for (Direction direction : DIRECTIONS) {
+                Chain outcome = outcomeCache.getOutcome(roundy.getId(), direction);
+                if (outcome != null) {
+                    hintMasks[roundy.getId()] |= 1 << direction.ordinal();
+                    endangered[outcome.getDeadRoundyId()] = true;
+                }
+            }
+        }
+        int count = 0;
+        for (int id = 0; id < roundyCount; id++) {
+            if (hintMasks[id] != shownHintMasks[id] || endangered[id] != shownEndangered[id]) {
+                count++;
+            }
+        }
+        if (count == 0) {
+            return;
+        }
+        int[] ids = new int[count];
+        int[] directionMasks = new int[count];
+        boolean[] dies = new boolean[count];
+        for (int id = 0, i = 0; id < roundyCount; id++) {
+            if (hintMasks[id] != shownHintMasks[id] || endangered[id] != shownEndangered[id]) {
+                ids[i] = id;
+                directionMasks[i] = hintMasks[id];
+                dies[i] = endangered[id];
+                shownHintMasks[id] = hintMasks[id];
+                shownEndangered[id] = endangered[id];
+                i++;
+            }
+        }
+        publish(RenderDelta.hints(ids, directionMasks, dies));
+    }
+
+    private void clearHints() {
+        Arrays.fill(shownHintMasks, 0);
+        Arrays.fill(shownEndangered, false);
+        publish(hintsCleared);
+    }
+
+    /**
+     * Queue a delta for the ui, waiting for room if the ui is late.
+     */
+    private void publish(RenderDelta delta) {
+        while (!deltas.offer(delta)) {
+            LockSupport.parkNanos(this, FULL_QUEUE_PARK_NANOS);
+        }
+        deltasPublished.run();
+    }
+
+    /**
+     * Log the events traced in the game so far, the collisions of the roundies and the metrics,
+     * when debug logs are enabled.
+     */
+    private void dumpTrace() {
+        LogUtility.logTrace(TAG, flatworld.getTracer());
+        LogUtility.logCollisions(TAG, flatworld.getRoundies());
+        LogUtility.logMetrics(TAG, metrics);
+    }
+
+    /**
+     * Record the state reached by the current game and close the log, if recording.
+     */
+    private void stopRecording() {
+        ReplayLog replayLog = flatworld.getReplayLog();
+        if (replayLog == null) {
+            return;
+        }
+        flatworld.setReplayLog(null);
+        replayLog.recordState(flatworld);
+        try {
+            replayLog.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot record the games", e);
+        }
+    }
+}
@@ -1,365 +1,304 @@
 package selantoapps.roundyinflatworld.controller;
 
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
-import android.view.View;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
 
 import selantoapps.roundyinflatworld.R;
-import selantoapps.roundyinflatworld.model.Roundy;
+import selantoapps.roundyinflatworld.model.Chain;
 import selantoapps.roundyinflatworld.presenter.RoundyViewAnimator;
 import selantoapps.roundyinflatworld.presenter.ViewRenderer;
-import selantoapps.roundyinflatworld.settings.Direction;
-import selantoapps.roundyinflatworld.utils.LogUtility;
+import selantoapps.roundyinflatworld.utils.EventTracer;
+import selantoapps.roundyinflatworld.utils.MetricsRegistry;
+import selantoapps.roundyinflatworld.utils.SpscQueue;
+import selantoapps.roundyinflatworld.utils.SplitMixRandomSource;
+import selantoapps.roundyinflatworld.widget.BoardView;
 
 /**
- * This class holds the logic of the game. It uses a {@link ViewRenderer} to update the ui on game
- * events and a {@link CollisionDetector} to find possible collision among instances of
- * {@link Roundy}.
+ * This class connects the game to the ui. The rules of the game are in {@link Flatworld}, which
+ * runs on an {@link EngineThread}: this class sends it the clicks of the user as
+ * {@link EngineCommand}s and, on the main thread, uses a {@link ViewRenderer} to show the
+ * {@link RenderDelta}s it answers with and a {@link RoundyViewAnimator} to animate the
+ * {@link Chain} of moves resolved on each click.
+ * <p>
+ * All the methods are called on the main thread.
  */
 public class GameEngine {
 
     private static final String TAG = GameEngine.class.getSimpleName();
 
+    private static final int COMMAND_CAPACITY = 64;
+
+    // each command publishes at most 3 deltas, so the engine never waits for the ui to drain the
+    // deltas while the ui waits for a saved state
+    private static final int DELTA_CAPACITY = COMMAND_CAPACITY * 4;
+
+    private static final long SAVE_TIMEOUT_MILLIS = 1000;
+
     private RoundyViewAnimator roundyViewAnimator;
-    private final int gridSize;
     private ViewRenderer renderer;
-    private CollisionDetector collisionDetector;
-    private final int cellCount;
+    private final Flatworld flatworld;
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private final int gridSize;
     private final int roundyCount;
-    private Random random;
-    private boolean[] occupiedCells;
-    private Roundy[] roundies;
-
-    private static final int DIED = -1;
-    private boolean ignoreClicks;
-    private int counter; //only used for testing
+    // sprites of the roundies in the grid, by id
+    private final BoardView.RoundySprite[] roundySprites;
+    private boolean started;
+
+    // commands sent on every click, created once: commands are immutable, so the same one can be
+    // queued more than once
+    private final EngineCommand[] clickCommands;
+    private final EngineCommand chainAnimationEnd = EngineCommand.of(EngineCommand.CHAIN_ANIMATION_END);
+
+    private final SpscQueue<EngineCommand> commands = new SpscQueue<>(COMMAND_CAPACITY);
+    private final SpscQueue<RenderDelta> deltas = new SpscQueue<>(DELTA_CAPACITY);
+    private final EngineThread engineThread;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // a drain of the deltas is posted to the main thread and not run yet
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
 
     public GameEngine(ViewRenderer renderer, CollisionDetector collisionDetector, RoundyViewAnimator roundyViewAnimator, int gridSize,
                       int roundyCount) {
         this.renderer = renderer;
-        this.collisionDetector = collisionDetector;
         this.roundyViewAnimator = roundyViewAnimator;
         this.gridSize = gridSize;
-        this.cellCount = gridSize * gridSize;
         this.roundyCount = roundyCount;
-        random = new Random();
-    }
-
-    public void init() {
-        counter = -1;
-        occupiedCells = new boolean[cellCount];
-        roundies = new Roundy[roundyCount];
-        drawRoundies();
-        renderer.enableInput(true);
-    }
-
-    public void restart() {
-        if (ignoreClicks) {
-            renderer.showToast(R.string.busy);
-        } else {
-            removeRoundies();
-            init();
+        roundySprites = new BoardView.RoundySprite[roundyCount];
+        clickCommands = new EngineCommand[roundyCount];
+        for (int id = 0; id < roundyCount; id++) {
+            clickCommands[id] = EngineCommand.click(id);
         }
-    }
-
-    private void drawRoundies() {
-        int cellIndex, rowIndex, columnIndex;
-
-        for (int i = 0; i < roundyCount - 1; i++) { //-1 because last roundy is drawn only on user action
-
-            cellIndex = pickAFreeCell();
-            occupyCell(cellIndex);
-            rowIndex = getRowIndexForCellIndex(cellIndex);
-            columnIndex = getColumnIndexForCellIndex(cellIndex);
-            View roundyView = renderer.createRoundyView(i, rowIndex, columnIndex, R.drawable.circle_solid_green);
-            attachClickListener(roundyView, i);
-
-            renderer.addView(roundyView);
-            roundies[i] = new Roundy(i, cellIndex, rowIndex, columnIndex, roundyView);
+        flatworld = new Flatworld(collisionDetector, gridSize, roundyCount, new SplitMixRandomSource());
+        flatworld.setMetricsRegistry(metrics);
+        // only one chain is played at a time, and copied for the ui by the engine thread
+        flatworld.setAllocationFree(true);
+        // events are traced only when debug logs are enabled, e.g. with
+        // adb shell setprop log.tag.GameEngine DEBUG
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            flatworld.getTracer().setLevel(EventTracer.VERBOSE);
         }
+        engineThread = new EngineThread(flatworld, metrics, commands, deltas, new Runnable() {
+            @Override
+            public void run() {
+                if (drainScheduled.compareAndSet(false, true)) {
+                    mainHandler.post(drainDeltas);
+                }
+            }
+        });
+        renderer.setOnRoundyClickListener(roundyClickListener);
     }
 
-    private void removeRoundies() {
-        for (Roundy roundy : roundies) {
-            if (roundy != null) {
-                renderer.removeView(roundy.getView());
-            }
-        }
-        renderer.refresh();
+    public GameEngine(ViewRenderer renderer, RoundyViewAnimator roundyViewAnimator, int gridSize,
+                      int roundyCount) {
+        this(renderer, Flatworld.createCollisionDetector(gridSize), roundyViewAnimator, gridSize, roundyCount);
     }
 
-    private int pickAFreeCell() {
-
-//        Handy cellIndexes when testing specified scenarios in a grid of 8x8
-//        counter++;
-//        int p[] = {
-//                24, 32, //N-S
-//                27, 28, //W-E
-//                29, 36, // below /
-//                20, 27, // above /
-//                28, 35, // on /
-//                27, 36, // on \
-//                20, 29, // above \
-//                35, 44, // below \
-//                34, 36, 38, 39, // test multiple horizontal crashes
-//                36, 20, 12, 52, // test multiple vertical crashes
-//                34, 27, 48, 6, // test multiple diagonal / crashes
-//                17, 26, 44, 53, // test multiple diagonal \ crashes
-//                1};
-//        return p[counter];
-
-        int cellIndex;
-        do {
-            cellIndex = random.nextInt(cellCount);
-        } while (occupiedCells[cellIndex]);
-        return cellIndex;
+    /**
+     * Called before {@link #start(byte[])}.
+     *
+     * @see Flatworld#setIncrementalCollisions(boolean)
+     */
+    public void setIncrementalCollisions(boolean incrementalCollisions) {
+        checkNotStarted();
+        flatworld.setIncrementalCollisions(incrementalCollisions);
     }
 
-    private void occupyCell(int cellIndex) {
-        occupiedCells[cellIndex] = true;
+    /**
+     * @return the registry of the latencies of the game, of its animations too when the
+     * {@link RoundyViewAnimator} records there
+     */
+    public MetricsRegistry getMetricsRegistry() {
+        return metrics;
     }
 
-    private int getColumnIndexForCellIndex(int cellIndex) {
-        return cellIndex % gridSize;
+    /**
+     * Record the games in a log, which {@link ReplayPlayer} can play again off the device. Called
+     * before {@link #start(byte[])}, the log is closed by {@link #shutdown()}.
+     */
+    public void startRecording(ReplayLog replayLog) {
+        checkNotStarted();
+        flatworld.setReplayLog(replayLog);
     }
 
-    private int getRowIndexForCellIndex(int cellIndex) {
-        if (cellIndex < gridSize) {
-            return 0;
-        } else {
-            return cellIndex / gridSize;
+    private void checkNotStarted() {
+        if (started) {
+            throw new IllegalStateException("The game engine is already started");
         }
     }
 
     /**
-     * According to the game design, roundies are unhappy if they can collides with other roundies
-     * in the possible {@link Direction} of the game.
-     * Roundies can move only horizontally, vertically, and diagonally.
+     * Start the engine thread with the game saved by {@link #saveState()}, or with a new game if
+     * the state is null or cannot be restored.
      */
-    private void findUnhappyRoundies() {
-        Log.i(TAG, "findUnhappyRoundies()");
-
-        // reset before calculating new collisions
-        for (Roundy roundy : roundies) {
-            if (roundy != null) {
-                roundy.resetCollisions();
-            }
-        }
-
-        // find and save potential collisions
-        collisionDetector.markCollisions(roundies, new CollisionListener() {
-            @Override
-            public void onCollisionFound(Roundy roundyA, Roundy roundyB) {
-                setUnHappy(roundyA, roundyB);
-            }
-        });
-
-        LogUtility.logCollisions(TAG, roundies);
+    public void start(byte[] savedState) {
+        checkNotStarted();
+        started = true;
+        engineThread.start();
+        submit(EngineCommand.start(savedState));
     }
 
-    public void addRoundyWithId(int id) {
-        int cellIndex = pickAFreeCell();
-        occupyCell(cellIndex);
-        int rowIndex = getRowIndexForCellIndex(cellIndex);
-        int columnIndex = getColumnIndexForCellIndex(cellIndex);
-
-        View roundyView = renderer.createRoundyView(id, rowIndex, columnIndex, R.drawable.circle_solid_yellow);
-        attachClickListener(roundyView, id);
-        renderer.addView(roundyView);
-        roundies[id] = new Roundy(id, cellIndex, rowIndex, columnIndex, roundyView);
-        findUnhappyRoundies();
+    /**
+     * Stop the engine thread, once it handled the commands already sent, recording the state
+     * reached by the current game and closing the log, if recording.
+     */
+    public void shutdown() {
+        if (started) {
+            submit(EngineCommand.of(EngineCommand.SHUTDOWN));
+        }
     }
 
     /**
-     * This method attach a click listener to the view associated to the roundy, with the the game
-     * logic specified below.
-     * <p>
-     * When a roundy is clicked then no other action in the game is allowed until all moves are
-     * terminated.
-     * <p>
-     * A roundy can move in one of the {@link Direction} on which he can collides with somebody
-     * else. This somebody else is chosen casually.
-     * Note: when there are more then one possible collision on the same direction then it is chosen
-     * the closest one.
-     * We don't want roundies to jump over other roundies :)
+     * Wait for the engine thread to save the state of the game, once it handled the commands
+     * already sent.
      *
-     * @param roundyView
-     * @param id
+     * @return the state of the game, to be resumed by {@link #start(byte[])}, null if the game is
+     * not started yet or the engine did not answer in time
+     * @see FlatworldSnapshot
      */
-    private void attachClickListener(final View roundyView, final int id) {
-        roundyView.setTag(id);
-        roundyView.setOnClickListener(new View.OnClickListener() {
-            @Override
-            public void onClick(View view) {
-                if (ignoreClicks) {
-                    renderer.showToast(R.string.busy);
-                    return;
-                }
-
-                int tag = (int) roundyView.getTag();
-                Roundy roundyA = roundies[tag];
-
-                if (roundyA.getCollisions().isEmpty()) {
-                    renderer.showToast(R.string.no_collisions);
-                } else {
-
-                    // Take one at random and make sure it is not covered by others on the same
-                    // direction
-                    HashMap<Integer, Direction> collisions = roundyA.getCollisions();
-                    Integer[] ids = new Integer[collisions.size()];
-                    collisions.keySet().toArray(ids);
-
-                    // find random roundy
-                    int randomCollisionId = ids[random.nextInt(ids.length)];
-                    Log.d(TAG, "random roundy: " + randomCollisionId);
-
-                    Roundy roundyB = roundies[randomCollisionId];
-                    Direction roundyBDirection = collisions.get(randomCollisionId);
-
-                    // find other collisions in some direction
-                    ArrayList<Integer> possibleClosestIds = new ArrayList<>();
-                    for (int otherId : ids) {
-                        if (randomCollisionId == otherId) {
-                            continue;
-                        }
-                        if (roundyBDirection == collisions.get(otherId)) { // same direction
-                            possibleClosestIds.add(otherId);
-                        }
-                    }
-
-                    if (!possibleClosestIds.isEmpty()) {
-                        // find closed collision to avoid to jump over roundies
-                        ArrayList<Roundy> possibleClosestRoundies = new ArrayList<>();
-                        possibleClosestRoundies.add(roundyB);
-                        for (int i : possibleClosestIds) {
-                            possibleClosestRoundies.add(roundies[i]);
-                        }
-                        roundyB = collisionDetector.findClosest(roundyA, possibleClosestRoundies, roundyBDirection);
-                    }
+    public byte[] saveState() {
+        if (!started) {
+            return null;
+        }
+        EngineCommand save = EngineCommand.of(EngineCommand.SAVE);
+        if (!submit(save)) {
+            return null;
+        }
+        return save.awaitSavedState(SAVE_TIMEOUT_MILLIS);
+    }
 
-                    Log.d(TAG, "closest roundy: " + roundyB.getId());
-                    Log.i(TAG, tag + " is moving towards " + roundyBDirection.name() +
-                            " and will collide with " + roundyB.getId());
-                    move(roundyA, roundyB, roundyBDirection);
-                }
-            }
-        });
+    public void restart() {
+        submit(EngineCommand.of(EngineCommand.RESTART));
     }
 
-    private void move(Roundy roundyA, Roundy roundyB, Direction direction) {
-        ignoreClicks = true;
-        roundyViewAnimator.move(roundyA, roundyB, direction);
+    public void addRoundyWithId(int id) {
+        submit(EngineCommand.addRoundy(id));
     }
 
-    public void onMoveAnimationEnd(Roundy roundyA, Roundy roundyB, Direction direction) {
-        freeCell(roundyA.getCellIndex());
-        roundyA.setCellIndex(roundyB.getCellIndex());
-        roundyA.setRowIndex(roundyB.getRowIndex());
-        roundyA.setColumnIndex(roundyB.getColumnIndex());
-        Log.d(TAG, "transfer movement " + roundyA.getId() + "->" + roundyB.getId());
-        transferMovement(roundyB, direction);
+    /**
+     * Show or hide, for each roundy, the directions it can be clicked towards and whether a
+     * click may kill it.
+     */
+    public void setHintsEnabled(boolean enabled) {
+        submit(EngineCommand.showHints(enabled));
     }
 
     /**
-     * When a roundy hits another roundy, then the last one starts move in the same direction and
-     * the first one stop in the cell of the collision.
+     * Send a command to the engine thread, waking it up.
      *
-     * @param roundy    the roundy which get the impulse to move
-     * @param direction direction of the movement
+     * @return false if the engine is too far behind to take it
      */
-    private void transferMovement(Roundy roundy, Direction direction) {
-        Log.d(TAG, "transferMovement to " + roundy.getId() + " towards " + direction.name());
-
-        // check if roundy can hit anybody in that direction
-        if (roundy.getCollisions().values().contains(direction)) {
-
-            // find the closest one in that direction
-            StringBuilder logPossibleCollisions = new StringBuilder("Possible collisions");
-            Roundy closest = null;
-            for (int collidesWithIndex : roundy.getCollisions().keySet()) {
-                if (roundy.getCollisions().get(collidesWithIndex) == direction) {
-                    Roundy found = roundies[collidesWithIndex];
-                    logPossibleCollisions.append("\n").append(found.toString());
-
-                    boolean isCloser = true;
-
-                    if (closest == null) {
-                        isCloser = true;
-                    } else {
-                        switch (direction) {
-                            case NORTH:
-                            case NORTH_EAST:
-                            case NORTH_WEST:
-                                isCloser = found.getRowIndex() > closest.getRowIndex();
-                                break;
-                            case EAST:
-                                isCloser = found.getColumnIndex() < closest.getColumnIndex();
-                                break;
-                            case SOUTH_EAST:
-                            case SOUTH_WEST:
-                            case SOUTH:
-                                isCloser = found.getRowIndex() < closest.getRowIndex();
-                                break;
-                            case WEST:
-                                isCloser = found.getColumnIndex() > closest.getColumnIndex();
-                                break;
-                        }
-                    }
+    private boolean submit(EngineCommand command) {
+        if (!started || !commands.offer(command)) {
+            renderer.showToast(R.string.busy);
+            return false;
+        }
+        LockSupport.unpark(engineThread);
+        return true;
+    }
 
-                    if (isCloser) {
-                        closest = found;
+    /**
+     * Apply all the deltas published by the engine thread so far.
+     */
+    private final Runnable drainDeltas = new Runnable() {
+        @Override
+        public void run() {
+            // deltas published from now on post another drain
+            drainScheduled.set(false);
+            RenderDelta delta;
+            while ((delta = deltas.poll()) != null) {
+                apply(delta);
+            }
+            renderer.commit();
+        }
+    };
+
+    private void apply(RenderDelta delta) {
+        switch (delta.type) {
+            case RenderDelta.RESET:
+                removeRoundies();
+                for (int i = 0; i < delta.roundyIds.length; i++) {
+                    int id = delta.roundyIds[i];
+                    drawRoundy(id, delta.cellIndexes[i], R.drawable.circle_solid_green);
+                    if (delta.happy != null) {
+                        renderer.showAsHappy(delta.happy[i], roundySprites[id]);
                     }
                 }
-            }
-
-            logPossibleCollisions.append("\nclosest: ").append(closest.toString());
-            Log.d(TAG, logPossibleCollisions.toString());
-            move(roundy, closest, direction);
-        } else {
-            // nobody to hit, it will fall of the world
-            roundyViewAnimator.moveOut(roundy, direction);
+                renderer.enableInput(delta.inputEnabled);
+                break;
+            case RenderDelta.ROUNDY_ADDED:
+                drawRoundy(delta.roundyIds[0], delta.cellIndexes[0], R.drawable.circle_solid_yellow);
+                break;
+            case RenderDelta.HAPPINESS:
+                for (int i = 0; i < delta.roundyIds.length; i++) {
+                    BoardView.RoundySprite sprite = roundySprites[delta.roundyIds[i]];
+                    if (sprite != null) {
+                        renderer.showAsHappy(delta.happy[i], sprite);
+                    }
+                }
+                break;
+            case RenderDelta.CHAIN:
+                roundyViewAnimator.play(delta.chain, roundySprites);
+                break;
+            case RenderDelta.MESSAGE:
+                renderer.showToast(delta.stringResId);
+                break;
+            case RenderDelta.HINTS:
+                renderer.showHints(delta.roundyIds, delta.directionMasks, delta.endangered);
+                break;
+            case RenderDelta.HINTS_CLEARED:
+                renderer.hideHints();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown delta " + delta.type);
         }
     }
 
-    private void freeCell(int cellIndex) {
-        occupiedCells[cellIndex] = false;
+    private void drawRoundy(int id, int cellIndex, int bgResId) {
+        BoardView.RoundySprite sprite = renderer.createSprite(id, cellIndex / gridSize, cellIndex % gridSize, bgResId);
+        renderer.addSprite(sprite);
+        roundySprites[id] = sprite;
     }
 
-    public void onMoveOutAnimationEnd(Roundy roundy) {
-        Log.i(TAG, "Roundy " + roundy.getId() + " died :(");
-        renderer.showToast(R.string.died, String.valueOf(roundy.getId()));
-
-        freeCell(roundy.getCellIndex());
-        roundies[roundy.getId()] = null;
-        roundy.setCellIndex(DIED);
-        renderer.removeView(roundy.getView());
-
-        for (Roundy r : roundies) {
-            if (r != null) {
-                setHappy(r);
+    private void removeRoundies() {
+        for (int id = 0; id < roundyCount; id++) {
+            if (roundySprites[id] != null) {
+                renderer.removeSprite(roundySprites[id]);
+                roundySprites[id] = null;
             }
         }
-        findUnhappyRoundies();
-        ignoreClicks = false;
+        renderer.refresh();
     }
 
-    private void setUnHappy(Roundy roundy) {
-        renderer.showAsHappy(false, roundy.getView());
-        roundy.setHappy(false);
-        Log.d(TAG, "setUnHappy " + roundy.getId());
-    }
+    /**
+     * Send the clicks on the roundies to the engine thread, which applies the game logic specified
+     * in {@link Flatworld#click(int)}. A single listener serves all the roundies, told the id of
+     * the roundy clicked by the board.
+     * <p>
+     * When a roundy is clicked then no other action in the game is allowed until all moves are
+     * terminated: the engine thread answers the clicks in the meantime with a busy message.
+     */
+    private final BoardView.OnRoundyClickListener roundyClickListener = new BoardView.OnRoundyClickListener() {
+        @Override
+        public void onRoundyClick(int id) {
+            if (commands.size() >= COMMAND_CAPACITY / 2) {
+                // keep room for the commands which cannot be dropped, like the end of a chain
+                renderer.showToast(R.string.busy);
+                return;
+            }
+            submit(clickCommands[id]);
+        }
+    };
 
-    private void setHappy(Roundy roundy) {
-        renderer.showAsHappy(true, roundy.getView());
-        roundy.setHappy(true);
-        Log.d(TAG, "setHappy " + roundy.getId());
-    }
+    public void onChainAnimationEnd(Chain chain) {
+        int roundyId = chain.getDeadRoundyId();
+        renderer.showToast(R.string.died, String.valueOf(roundyId));
+
+        renderer.removeSprite(roundySprites[roundyId]);
+        roundySprites[roundyId] = null;
 
-    private void setUnHappy(Roundy roundyA, Roundy roundyB) {
-        setUnHappy(roundyA);
-        setUnHappy(roundyB);
+        submit(chainAnimationEnd);
     }
 }
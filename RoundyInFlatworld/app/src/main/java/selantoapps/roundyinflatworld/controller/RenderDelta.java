@@ -0,0 +1,112 @@
+package selantoapps.roundyinflatworld.controller;
+
+import selantoapps.roundyinflatworld.model.Chain;
+
+/**
+ * A change of the game to show on screen, sent by the {@link EngineThread} to {@link GameEngine}.
+ * <p>
+ * Deltas are immutable: their arrays are created for them and nobody writes them afterwards, so
+ * the ui can read them while the engine plays on. The deltas without arrays can be published
+ * again and again. The chain of a {@link #CHAIN} is the exception: the engine thread keeps two of
+ * them and fills each one in turn with the chain resolved by {@link Flatworld}, which it does only
+ * once the ui has played the previous chain.
+ */
+final class RenderDelta {
+
+    /**
+     * Replace all the roundies on screen with {@link #roundyIds} in {@link #cellIndexes}, green or,
+     * if {@link #happy} is not null, as happy or not, and enable the input if {@link #inputEnabled}.
+     */
+    static final int RESET = 0;
+    /**
+     * The roundy {@link #roundyIds}[0] was added in {@link #cellIndexes}[0].
+     */
+    static final int ROUNDY_ADDED = 1;
+    /**
+     * The roundies {@link #roundyIds} are now happy or not as in {@link #happy}.
+     */
+    static final int HAPPINESS = 2;
+    /**
+     * Play {@link #chain}.
+     */
+    static final int CHAIN = 3;
+    /**
+     * Show the message {@link #stringResId}.
+     */
+    static final int MESSAGE = 4;
+    /**
+     * Change the hints on screen of the roundies {@link #roundyIds} only: each one can be clicked
+     * towards the directions in {@link #directionMasks}, a bit by direction ordinal, and dies in
+     * one of the possible clicks if {@link #endangered}.
+     */
+    static final int HINTS = 5;
+    /**
+     * Hide all the hints.
+     */
+    static final int HINTS_CLEARED = 6;
+
+    final int type;
+
+    final int[] roundyIds;
+
+    final int[] cellIndexes;
+
+    final boolean[] happy;
+
+    final boolean inputEnabled;
+
+    final Chain chain;
+
+    final int stringResId;
+
+    final int[] directionMasks;
+
+    final boolean[] endangered;
+
+    private RenderDelta(int type, int[] roundyIds, int[] cellIndexes, boolean[] happy,
+                        boolean inputEnabled, Chain chain, int stringResId) {
+        this(type, roundyIds, cellIndexes, happy, inputEnabled, chain, stringResId, null, null);
+    }
+
+    private RenderDelta(int type, int[] roundyIds, int[] cellIndexes, boolean[] happy,
+                        boolean inputEnabled, Chain chain, int stringResId, int[] directionMasks,
+                        boolean[] endangered) {
+        this.type = type;
+        this.roundyIds = roundyIds;
+        this.cellIndexes = cellIndexes;
+        this.happy = happy;
+        this.inputEnabled = inputEnabled;
+        this.chain = chain;
+        this.stringResId = stringResId;
+        this.directionMasks = directionMasks;
+        this.endangered = endangered;
+    }
+
+    static RenderDelta reset(int[] roundyIds, int[] cellIndexes, boolean[] happy, boolean inputEnabled) {
+        return new RenderDelta(RESET, roundyIds, cellIndexes, happy, inputEnabled, null, 0);
+    }
+
+    static RenderDelta roundyAdded(int roundyId, int cellIndex) {
+        return new RenderDelta(ROUNDY_ADDED, new int[]{roundyId}, new int[]{cellIndex}, null, false, null, 0);
+    }
+
+    static RenderDelta happiness(int[] roundyIds, boolean[] happy) {
+        return new RenderDelta(HAPPINESS, roundyIds, null, happy, false, null, 0);
+    }
+
+    static RenderDelta chain(Chain chain) {
+        return new RenderDelta(CHAIN, null, null, null, false, chain, 0);
+    }
+
+    static RenderDelta message(int stringResId) {
+        return new RenderDelta(MESSAGE, null, null, null, false, null, stringResId);
+    }
+
+    static RenderDelta hints(int[] roundyIds, int[] directionMasks, boolean[] endangered) {
+        return new RenderDelta(HINTS, roundyIds, null, null, false, null, 0, directionMasks, endangered);
+    }
+
+    static RenderDelta hintsCleared() {
+        return new RenderDelta(HINTS_CLEARED, null, null, null, false, null, 0);
+    }
+}
@@ -0,0 +1,197 @@
+package selantoapps.roundyinflatworld.presenter;
+
+import android.content.Context;
+import android.graphics.drawable.Drawable;
+import android.support.v4.content.ContextCompat;
+import android.util.SparseArray;
+import android.view.View;
+import android.widget.Toast;
+
+import java.util.Arrays;
+
+import selantoapps.roundyinflatworld.R;
+import selantoapps.roundyinflatworld.widget.BoardView;
+
+/**
+ * Shows the game in a single {@link BoardView}: the roundies are its sprites, drawn by the board
+ * instead of being laid out one by one.
+ * <p>
+ * The sprite of a roundy removed is kept and given back, moved to its new cell, the next time a
+ * sprite is created for the same id, and all the sprites share the same drawables, all of them
+ * from {@link #getDrawable(int)}: once each id got its sprite, restarting the game or adding a
+ * roundy back does not allocate anything. Sharing a drawable is safe since the board sets its
+ * bounds before drawing each sprite.
+ * <p>
+ * The happiness shown by {@link #showAsHappy(boolean, BoardView.RoundySprite)} is kept by id and
+ * applied with the next frame after a {@link #commit()}, so each sprite changes its background at
+ * most once per frame, and only if it is not the same drawable.
+ */
+public class BoardViewRenderer implements ViewRenderer {
+
+    private final Context context;
+
+    private final BoardView boardView;
+
+    private final View addRoundyBtn;
+
+    private final Drawable happyBg;
+
+    private final Drawable unHappyBg;
+
+    private Toast toast;
+
+    // sprites by id, drawn or not
+    private BoardView.RoundySprite[] recycledSprites = new BoardView.RoundySprite[0];
+
+    // drawables by resource id, shared by all the sprites
+    private final SparseArray<Drawable> drawables = new SparseArray<>();
+
+    // backgrounds to apply at the next frame, by id, and the ids which have one
+    private Drawable[] pendingBackgrounds = new Drawable[0];
+    private int[] pendingIds = new int[0];
+    private boolean[] pendingListed = new boolean[0];
+    private int pendingCount;
+
+    private boolean commitScheduled;
+
+    private final Runnable commitFrame = new Runnable() {
+        @Override
+        public void run() {
+            commitScheduled = false;
+            for (int i = 0; i < pendingCount; i++) {
+                int id = pendingIds[i];
+                pendingListed[id] = false;
+                Drawable background = pendingBackgrounds[id];
+                if (background == null) {
+                    // cancelled
+                    continue;
+                }
+                pendingBackgrounds[id] = null;
+                BoardView.RoundySprite sprite = recycledSprites[id];
+                if (sprite.getBackground() != background) {
+                    sprite.setBackground(background);
+                }
+            }
+            pendingCount = 0;
+        }
+    };
+
+    public BoardViewRenderer(Context context, BoardView boardView, View addRoundyBtn) {
+        this.context = context;
+        this.boardView = boardView;
+        this.addRoundyBtn = addRoundyBtn;
+        happyBg = getDrawable(R.drawable.circle_solid_green);
+        unHappyBg = getDrawable(R.drawable.circle_solid_red);
+    }
+
+    @Override
+    public void removeSprite(BoardView.RoundySprite sprite) {
+        cancelPendingBackground(sprite.getRoundyId());
+        boardView.removeSprite(sprite);
+    }
+
+    @Override
+    public void refresh() {
+        boardView.invalidate();
+    }
+
+    @Override
+    public void enableInput(boolean enable) {
+        addRoundyBtn.setEnabled(enable);
+    }
+
+    @Override
+    public BoardView.RoundySprite createSprite(int id, int rowIndex, int columnIndex, int bgResId) {
+        if (id >= recycledSprites.length) {
+            int length = Math.max(id + 1, recycledSprites.length * 2);
+            recycledSprites = Arrays.copyOf(recycledSprites, length);
+            pendingBackgrounds = Arrays.copyOf(pendingBackgrounds, length);
+            pendingIds = Arrays.copyOf(pendingIds, length);
+            pendingListed = Arrays.copyOf(pendingListed, length);
+        }
+        cancelPendingBackground(id);
+        BoardView.RoundySprite sprite = recycledSprites[id];
+        if (sprite == null) {
+            sprite = boardView.createSprite(id, rowIndex, columnIndex, getDrawable(bgResId));
+            recycledSprites[id] = sprite;
+        } else {
+            boardView.placeSprite(sprite, rowIndex, columnIndex, getDrawable(bgResId));
+        }
+        return sprite;
+    }
+
+    @Override
+    public Drawable getDrawable(int resId) {
+        Drawable drawable = drawables.get(resId);
+        if (drawable == null) {
+            drawable = ContextCompat.getDrawable(context, resId);
+            drawables.put(resId, drawable);
+        }
+        return drawable;
+    }
+
+    @Override
+    public void addSprite(BoardView.RoundySprite sprite) {
+        boardView.addSprite(sprite);
+    }
+
+    @Override
+    public void setOnRoundyClickListener(BoardView.OnRoundyClickListener listener) {
+        boardView.setOnRoundyClickListener(listener);
+    }
+
+    @Override
+    public void showToast(int stringResId) {
+        hideExistingToast();
+        toast = Toast.makeText(context, stringResId, Toast.LENGTH_SHORT);
+        toast.show();
+    }
+
+    @Override
+    public void showToast(int stringResId, String argument) {
+        hideExistingToast();
+        toast = Toast.makeText(context, context.getString(stringResId, argument), Toast.LENGTH_SHORT);
+        toast.show();
+    }
+
+    private void hideExistingToast() {
+        if (toast != null) {
+            toast.cancel();
+        }
+    }
+
+    @Override
+    public void showAsHappy(boolean happy, BoardView.RoundySprite sprite) {
+        int id = sprite.getRoundyId();
+        if (!pendingListed[id]) {
+            pendingListed[id] = true;
+            pendingIds[pendingCount++] = id;
+        }
+        // the last one of the frame wins
+        pendingBackgrounds[id] = happy ? happyBg : unHappyBg;
+    }
+
+    private void cancelPendingBackground(int id) {
+        if (id < pendingBackgrounds.length) {
+            pendingBackgrounds[id] = null;
+        }
+    }
+
+    @Override
+    public void showHints(int[] roundyIds, int[] directionMasks, boolean[] endangered) {
+        boardView.updateHints(roundyIds, directionMasks, endangered);
+    }
+
+    @Override
+    public void hideHints() {
+        boardView.clearHints();
+    }
+
+    @Override
+    public void commit() {
+        if (pendingCount > 0 && !commitScheduled) {
+            commitScheduled = true;
+            boardView.postOnAnimation(commitFrame);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package selantoapps.roundyinflatworld.presenter;
+
+import selantoapps.roundyinflatworld.settings.Direction;
+
+/**
+ * Where a roundy falls off the grid, for any grid size: the position of the view of a roundy in
+ * the first cell outside the grid along its way.
+ * <p>
+ * All the cells on the same line leave the grid through the same cell, so the positions are
+ * computed once per line and per direction, 2 * gridSize - 1 lines at most, and then looked up.
+ */
+class ExitPoints {
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final int gridSize;
+
+    // by direction ordinal and line
+    private final float[][] exitXs = new float[DIRECTIONS.length][];
+
+    private final float[][] exitYs = new float[DIRECTIONS.length][];
+
+    /**
+     * @param gridSize    number of cells on each side of the grid
+     * @param cellSize    size of a cell, in pixels
+     * @param cellPadding space between the border of a cell and its roundy, in pixels
+     */
+    ExitPoints(int gridSize, int cellSize, int cellPadding) {
+        this.gridSize = gridSize;
+        for (Direction direction : DIRECTIONS) {
+            int rowStep = direction.getRowStep();
+            int columnStep = direction.getColumnStep();
+            int lineCount = rowStep == 0 || columnStep == 0 ? gridSize : gridSize * 2 - 1;
+            float[] xs = new float[lineCount];
+            float[] ys = new float[lineCount];
+            for (int line = 0; line < lineCount; line++) {
+                // any cell of the line gets out of the grid through the same cell
+                int rowIndex = getFirstRowIndex(direction, line);
+                int columnIndex = getFirstColumnIndex(direction, line);
+                int steps = Math.min(getSteps(rowIndex, rowStep), getSteps(columnIndex, columnStep));
+                xs[line] = (columnIndex + steps * columnStep) * cellSize + cellPadding;
+                ys[line] = (rowIndex + steps * rowStep) * cellSize + cellPadding;
+            }
+            exitXs[direction.ordinal()] = xs;
+            exitYs[direction.ordinal()] = ys;
+        }
+    }
+
+    /**
+     * @return steps from the index to the first one outside the grid, moving by step
+     */
+    private int getSteps(int index, int step) {
+        if (step > 0) {
+            return gridSize - index;
+        } else if (step < 0) {
+            return index + 1;
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    private int getLine(Direction direction, int rowIndex, int columnIndex) {
+        int rowStep = direction.getRowStep();
+        int columnStep = direction.getColumnStep();
+        if (rowStep == 0) {
+            return rowIndex;
+        } else if (columnStep == 0) {
+            return columnIndex;
+        } else if (rowStep == columnStep) {
+            // NORTH_WEST and SOUTH_EAST, column - row is constant
+            return columnIndex - rowIndex + gridSize - 1;
+        }
+        // NORTH_EAST and SOUTH_WEST, row + column is constant
+        return rowIndex + columnIndex;
+    }
+
+    private int getFirstRowIndex(Direction direction, int line) {
+        int rowStep = direction.getRowStep();
+        int columnStep = direction.getColumnStep();
+        if (rowStep == 0) {
+            return line;
+        } else if (columnStep == 0) {
+            return 0;
+        } else if (rowStep == columnStep) {
+            return Math.max(0, gridSize - 1 - line);
+        }
+        return Math.min(line, gridSize - 1);
+    }
+
+    private int getFirstColumnIndex(Direction direction, int line) {
+        int rowStep = direction.getRowStep();
+        int columnStep = direction.getColumnStep();
+        if (rowStep == 0) {
+            return 0;
+        } else if (columnStep == 0) {
+            return line;
+        }
+        // both diagonals start on the first column, then on the first row for NORTH_WEST and
+        // SOUTH_EAST or on the last row for NORTH_EAST and SOUTH_WEST
+        return Math.max(0, line - (gridSize - 1));
+    }
+
+    float getX(Direction direction, int cellIndex) {
+        return exitXs[direction.ordinal()][getLine(direction, cellIndex / gridSize, cellIndex % gridSize)];
+    }
+
+    float getY(Direction direction, int cellIndex) {
+        return exitYs[direction.ordinal()][getLine(direction, cellIndex / gridSize, cellIndex % gridSize)];
+    }
+}
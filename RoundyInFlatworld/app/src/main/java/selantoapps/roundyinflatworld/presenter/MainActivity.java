@@ -1,196 +1,151 @@
 package selantoapps.roundyinflatworld.presenter;
 
-import android.graphics.drawable.Drawable;
 import android.os.Bundle;
-import android.support.v4.content.ContextCompat;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.AppCompatButton;
 import android.util.Log;
-import android.view.Gravity;
-import android.view.LayoutInflater;
-import android.view.View;
 import android.view.ViewTreeObserver;
-import android.widget.LinearLayout;
-import android.widget.RelativeLayout;
-import android.widget.TextView;
-import android.widget.Toast;
 
-import butterknife.BindColor;
-import butterknife.BindDrawable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+
 import butterknife.BindView;
 import butterknife.ButterKnife;
 import butterknife.OnClick;
 import selantoapps.roundyinflatworld.R;
-import selantoapps.roundyinflatworld.controller.CollisionDetector;
 import selantoapps.roundyinflatworld.controller.GameEngine;
-import selantoapps.roundyinflatworld.model.Roundy;
+import selantoapps.roundyinflatworld.controller.ReplayLog;
+import selantoapps.roundyinflatworld.model.Chain;
 import selantoapps.roundyinflatworld.settings.Constants;
-import selantoapps.roundyinflatworld.settings.Direction;
-import selantoapps.roundyinflatworld.widget.SquareLinearLayout;
+import selantoapps.roundyinflatworld.widget.BoardView;
 
-public class MainActivity extends AppCompatActivity implements ViewRenderer {
+public class MainActivity extends AppCompatActivity {
 
     private static final String TAG = MainActivity.class.getSimpleName();
 
-    @BindView(R.id.rootView)
-    RelativeLayout rootView;
-
-    @BindView(R.id.gridView)
-    SquareLinearLayout gridView;
+    /**
+     * Optional int extras overriding {@link Constants#GRID_SIZE} and {@link Constants#ROUNDY_COUNT},
+     * e.g. adb shell am start -n selantoapps.roundyinflatworld/.presenter.MainActivity
+     * --ei gridSize 64 --ei roundyCount 1000
+     */
+    public static final String EXTRA_GRID_SIZE = "gridSize";
+    public static final String EXTRA_ROUNDY_COUNT = "roundyCount";
 
-    @BindView(R.id.addRoundyBtn)
-    AppCompatButton addRoundyBtn;
+    private static final String GAME_STATE = "gameState";
 
-    @BindColor(R.color.white)
-    int white;
+    private static final String REPLAY_DIR = "replays";
+    private static final String REPLAY_EXTENSION = ".rifr";
 
-    @BindDrawable(R.drawable.circle_solid_red)
-    Drawable unHappyBg;
+    @BindView(R.id.boardView)
+    BoardView boardView;
 
-    @BindDrawable(R.drawable.circle_solid_green)
-    Drawable happyBg;
-
-    @BindDrawable(R.drawable.circle_solid_red_pressed)
-    Drawable onTheMoveBg;
+    @BindView(R.id.addRoundyBtn)
+    AppCompatButton addRoundyBtn;
 
-    private int cellSize;
-    private int roundySize;
-    private int cellPadding;
+    private int gridSize;
+    private int roundyCount;
+    private boolean hintsEnabled;
     private GameEngine gameEngine;
-    private Toast toast;
     private RoundyAnimationListener roundyAnimationListener;
     private RoundyViewAnimator roundyViewAnimator;
 
     @Override
-    protected void onCreate(Bundle savedInstanceState) {
+    protected void onCreate(final Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
         ButterKnife.bind(this);
 
-        roundyAnimationListener = new RoundyAnimationListener() {
-            @Override
-            public void onMoveAnimationEnd(Roundy roundyA, Roundy roundyB, Direction direction) {
-                gameEngine.onMoveAnimationEnd(roundyA, roundyB, direction);
-            }
+        gridSize = getIntent().getIntExtra(EXTRA_GRID_SIZE, Constants.GRID_SIZE);
+        roundyCount = getIntent().getIntExtra(EXTRA_ROUNDY_COUNT, Constants.ROUNDY_COUNT);
+        if (gridSize < 1 || roundyCount < 1 || roundyCount > (long) gridSize * gridSize) {
+            Log.w(TAG, "Cannot place " + roundyCount + " roundies in a grid of " + gridSize + "x" + gridSize);
+            gridSize = Constants.GRID_SIZE;
+            roundyCount = Constants.ROUNDY_COUNT;
+        }
 
+        roundyAnimationListener = new RoundyAnimationListener() {
             @Override
-            public void onMoveOutAnimationEnd(Roundy roundy) {
-                gameEngine.onMoveOutAnimationEnd(roundy);
+            public void onChainAnimationEnd(Chain chain) {
+                gameEngine.onChainAnimationEnd(chain);
             }
         };
 
-        roundyViewAnimator = new RoundyViewAnimator(onTheMoveBg, roundyAnimationListener);
-
-        gameEngine = new GameEngine(this, new CollisionDetector(Constants.GRID_SIZE),
-                roundyViewAnimator, Constants.GRID_SIZE, Constants.ROUNDY_COUNT);
-
-        // inflate the grid
-        LayoutInflater inflater = LayoutInflater.from(this);
-        for (int i = 0; i < Constants.GRID_SIZE; i++) {
-            inflater.inflate(R.layout.grid_row, gridView, true);
+        boardView.setGridSize(gridSize);
+        ViewRenderer renderer = new BoardViewRenderer(this, boardView, addRoundyBtn);
+        // the backgrounds of the sprites all come from the renderer, to be compared by identity
+        roundyViewAnimator = new RoundyViewAnimator(renderer.getDrawable(R.drawable.circle_solid_red_pressed),
+                roundyAnimationListener);
+        gameEngine = new GameEngine(renderer, roundyViewAnimator, gridSize, roundyCount);
+        roundyViewAnimator.setMetricsRegistry(gameEngine.getMetricsRegistry());
+        // games are recorded only when debug logs are enabled, e.g. with
+        // adb shell setprop log.tag.MainActivity DEBUG
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            startRecording();
         }
 
-        gridView.getViewTreeObserver().addOnGlobalLayoutListener(new ViewTreeObserver.OnGlobalLayoutListener() {
+        boardView.getViewTreeObserver().addOnGlobalLayoutListener(new ViewTreeObserver.OnGlobalLayoutListener() {
             @Override
             public void onGlobalLayout() {
-                gridView.getViewTreeObserver().removeOnGlobalLayoutListener(this);
+                boardView.getViewTreeObserver().removeOnGlobalLayoutListener(this);
 
-                cellSize = gridView.getMeasuredHeight() / 8;
-                cellPadding = cellSize / 8;
-                roundySize = cellSize - cellPadding * 2;
+                roundyViewAnimator.init(gridSize, boardView.getCellSize(), boardView.getCellPadding());
 
-                roundyViewAnimator.init(roundySize, gridView.getWidth(), gridView.getHeight(), cellSize);
+                Log.v(TAG, "boardView width: " + boardView.getMeasuredWidth() + " height: " +
+                        boardView.getMeasuredHeight() + " cellSize: " + boardView.getCellSize());
 
-                Log.v(TAG, "gridView width: " + gridView.getMeasuredWidth() + " height: " +
-                        gridView.getMeasuredHeight() + " cellSize: " + cellSize);
-
-                gameEngine.init();
+                gameEngine.start(savedInstanceState == null ? null : savedInstanceState.getByteArray(GAME_STATE));
             }
         });
     }
 
-    @OnClick(R.id.restartBtn)
-    public void onRestartBtnClick() {
-        gameEngine.restart();
-    }
-
-    @OnClick(R.id.addRoundyBtn)
-    public void onAddRoundyBtnClick() {
-        if (addRoundyBtn.isEnabled()) {
-            addRoundyBtn.setEnabled(false);
-            gameEngine.addRoundyWithId(Constants.ROUNDY_COUNT - 1);
-        }
-    }
-
-    private View createRoundyView(int index, int cellSize, int roundySize, int rowIndex, int columnIndex, int margin, int bgResId) {
-        int marginLef = cellSize * columnIndex + margin;
-        int marginTop = cellSize * rowIndex + margin;
-
-        TextView roundyView = new TextView(this);
-        roundyView.setText(String.valueOf(index));
-        roundyView.setTextColor(white);
-        roundyView.setGravity(Gravity.CENTER);
-
-        LinearLayout.LayoutParams params = new LinearLayout.LayoutParams(roundySize, roundySize);
-        params.setMargins(marginLef, marginTop, margin, margin);
-        roundyView.setLayoutParams(params);
-        roundyView.setBackground(ContextCompat.getDrawable(this, bgResId));
-        return roundyView;
-    }
-
-    @Override
-    public void onPointerCaptureChanged(boolean hasCapture) {
-
-    }
-
-    @Override
-    public void removeView(View view) {
-        rootView.removeView(view);
-    }
-
-    @Override
-    public void refresh() {
-        gridView.refreshDrawableState();
-    }
-
     @Override
-    public void enableInput(boolean enable) {
-        addRoundyBtn.setEnabled(true);
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putByteArray(GAME_STATE, gameEngine.saveState());
     }
 
-    @Override
-    public View createRoundyView(int id, int rowIndex, int columnIndex, int bgResId) {
-        return createRoundyView(id, cellSize, roundySize, rowIndex, columnIndex, cellPadding, bgResId);
+    private void startRecording() {
+        File replayDir = new File(getFilesDir(), REPLAY_DIR);
+        File replayFile = new File(replayDir, System.currentTimeMillis() + REPLAY_EXTENSION);
+        try {
+            if (replayDir.isDirectory() || replayDir.mkdirs()) {
+                gameEngine.startRecording(new ReplayLog(new FileOutputStream(replayFile).getChannel()));
+                Log.d(TAG, "Recording games in " + replayFile);
+            }
+        } catch (FileNotFoundException e) {
+            Log.w(TAG, "Cannot record games in " + replayFile, e);
+        }
     }
 
     @Override
-    public void addView(View roundyView) {
-        rootView.addView(roundyView);
+    protected void onDestroy() {
+        gameEngine.shutdown();
+        super.onDestroy();
     }
 
-    @Override
-    public void showToast(int stringResId) {
-        hideExistingToast();
-        toast = Toast.makeText(MainActivity.this, stringResId, Toast.LENGTH_SHORT);
-        toast.show();
+    @OnClick(R.id.restartBtn)
+    public void onRestartBtnClick() {
+        gameEngine.restart();
     }
 
-    @Override
-    public void showToast(int stringResId, String argument) {
-        hideExistingToast();
-        toast = Toast.makeText(MainActivity.this, getString(stringResId, argument), Toast.LENGTH_SHORT);
-        toast.show();
+    @OnClick(R.id.hintsBtn)
+    public void onHintsBtnClick() {
+        hintsEnabled = !hintsEnabled;
+        gameEngine.setHintsEnabled(hintsEnabled);
     }
 
-    private void hideExistingToast() {
-        if (toast != null) {
-            toast.cancel();
+    @OnClick(R.id.addRoundyBtn)
+    public void onAddRoundyBtnClick() {
+        if (addRoundyBtn.isEnabled()) {
+            addRoundyBtn.setEnabled(false);
+            gameEngine.addRoundyWithId(roundyCount - 1);
         }
     }
 
     @Override
-    public void showAsHappy(boolean happy, View view) {
-        view.setBackground(happy ? happyBg : unHappyBg);
+    public void onPointerCaptureChanged(boolean hasCapture) {
+
     }
 }
@@ -1,10 +1,7 @@
 package selantoapps.roundyinflatworld.presenter;
 
-import selantoapps.roundyinflatworld.model.Roundy;
-import selantoapps.roundyinflatworld.settings.Direction;
+import selantoapps.roundyinflatworld.model.Chain;
 
 public interface RoundyAnimationListener {
-    void onMoveAnimationEnd(Roundy roundyA, Roundy roundyB, Direction direction);
-
-    void onMoveOutAnimationEnd(Roundy roundy);
+    void onChainAnimationEnd(Chain chain);
 }
@@ -2,176 +2,168 @@ package selantoapps.roundyinflatworld.presenter;
 
 import android.animation.Animator;
 import android.animation.AnimatorListenerAdapter;
+import android.animation.TimeInterpolator;
+import android.animation.ValueAnimator;
 import android.graphics.drawable.Drawable;
-import android.util.Log;
-import android.view.View;
+import android.view.animation.AccelerateDecelerateInterpolator;
+import android.view.animation.LinearInterpolator;
 
-import selantoapps.roundyinflatworld.model.Roundy;
+import selantoapps.roundyinflatworld.model.Chain;
 import selantoapps.roundyinflatworld.settings.Constants;
-import selantoapps.roundyinflatworld.settings.Direction;
-import selantoapps.roundyinflatworld.utils.LogUtility;
+import selantoapps.roundyinflatworld.utils.LatencyHistogram;
+import selantoapps.roundyinflatworld.utils.MetricsRegistry;
+import selantoapps.roundyinflatworld.widget.BoardView;
 
 public class RoundyViewAnimator {
 
-    private static final String TAG = RoundyViewAnimator.class.getSimpleName();
-
     private Drawable onTheMoveBg;
 
-    private float roundySize;
+    // where each roundy falls off the grid, null until the grid is measured
+    private ExitPoints exitPoints;
 
-    private float gridViewWidth;
+    private RoundyAnimationListener listener;
 
-    private float gridViewHeight;
+    private final TimeInterpolator linearInterpolator = new LinearInterpolator();
 
-    private float cellSize;
+    private final TimeInterpolator hopInterpolator = new AccelerateDecelerateInterpolator();
 
-    private RoundyAnimationListener listener;
+    // null unless a metrics registry is set
+    private LatencyHistogram chainAnimationLatency;
+
+    // single timeline reused by all the chains
+    private final ValueAnimator timeline = ValueAnimator.ofFloat(0f, 1f);
+
+    // chain being played, its sprites and where each of them starts and stops
+    private Chain chain;
+    private int hops;
+    private int movingHops;
+    private long timelineStart;
+    private BoardView.RoundySprite[] hopSprites = new BoardView.RoundySprite[0];
+    private float[] startXs;
+    private float[] startYs;
+    private float[] endXs;
+    private float[] endYs;
+
+    // where the roundy being planned stops: the sprite of the next roundy or out of the grid
+    private float targetX;
+
+    private float targetY;
 
     public RoundyViewAnimator(Drawable onTheMoveBg, RoundyAnimationListener listener) {
         this.onTheMoveBg = onTheMoveBg;
         this.listener = listener;
+        // hops are placed in time, each one eases on its own
+        timeline.setInterpolator(linearInterpolator);
+        timeline.addUpdateListener(timelineUpdateListener);
+        timeline.addListener(timelineListener);
     }
 
     /**
      * When grid view is drawn then it is possible to initialize this animator with the right
      * parameters
      *
-     * @param roundySize
-     * @param gridViewWidth
-     * @param gridViewHeight
-     * @param cellSize
+     * @param gridSize    number of cells on each side of the grid
+     * @param cellSize    size of a cell, in pixels
+     * @param cellPadding space between the border of a cell and its roundy, in pixels
      */
-    public void init(int roundySize, int gridViewWidth, int gridViewHeight, int cellSize) {
-        this.roundySize = roundySize;
-        this.gridViewWidth = gridViewWidth;
-        this.gridViewHeight = gridViewHeight;
-        this.cellSize = cellSize;
+    public void init(int gridSize, int cellSize, int cellPadding) {
+        exitPoints = new ExitPoints(gridSize, cellSize, cellPadding);
     }
 
     /**
-     * Move roundyA to roundyB
-     *
-     * @param roundyA
-     * @param roundyB
-     * @param direction
+     * @param metrics registry where the duration of each chain animation is recorded, from its
+     *                start to its end
      */
-    public void move(final Roundy roundyA, final Roundy roundyB, final Direction direction) {
-        Log.d(TAG, "move()");
-        View viewA = roundyA.getView();
-        View viewB = roundyB.getView();
-
-        LogUtility.logMove(viewA, viewB);
-
-        viewA.setBackground(onTheMoveBg);
-        viewA.animate().x(viewB.getX()).y(viewB.getY()).setDuration(Constants.MOVE_SPEED).setListener(new AnimatorListenerAdapter() {
-            @Override
-            public void onAnimationEnd(Animator animation) {
-                super.onAnimationEnd(animation);
-                listener.onMoveAnimationEnd(roundyA, roundyB, direction);
-            }
-        });
+    public void setMetricsRegistry(MetricsRegistry metrics) {
+        chainAnimationLatency = metrics.histogram(MetricsRegistry.CHAIN_ANIMATION);
     }
 
     /**
-     * Move roundy in the specified direction until it falls off the grid.
+     * Play the whole chain as a single timeline: each roundy of the chain rolls until the sprite of
+     * the next one, which then starts rolling in its turn, and the last one falls off the grid.
+     * <p>
+     * Every hop lasts {@link Constants#MOVE_SPEED}, the listener is notified only once at the end
+     * of the timeline. The same animator and listeners are reused by every chain, so playing a
+     * chain does not allocate once the buffers fit the longest chain seen.
      *
-     * @param roundy
-     * @param direction
+     * @param chain       chain of moves already resolved by the game
+     * @param roundySprites sprites of the roundies indexed by id, still in their cells before the
+     *                      click
      */
-    public void moveOut(final Roundy roundy, Direction direction) {
-        Log.d(TAG, "moveOut() " + roundy.getId() + " towards " + direction.name());
-        final View view = roundy.getView();
-        float startX = view.getX();
-        float startY = view.getY();
-        float endX = 0, endY = 0;
-
-        switch (direction) {
-            case NORTH:
-                endX = startX;
-                endY = -roundySize;
-                break;
-            case EAST:
-                endX = gridViewWidth;
-                endY = startY;
-                break;
-            case SOUTH:
-                endX = startX;
-                endY = gridViewHeight;
-                break;
-            case WEST:
-                endX = -roundySize;
-                endY = startY;
-                break;
-            case NORTH_EAST:
-                if (roundy.getCellIndex() % (Constants.GRID_SIZE - 1) == 0) {
-                    Log.d(TAG, "roundy is on SW-NE diagonal");
-                    endX = gridViewWidth;
-                    endY = -roundySize;
-                } else if (startX + startY < gridViewHeight) {
-                    Log.d(TAG, "roundy is above SW-NE diagonal");
-                    endX = startX + startY + cellSize;
-                    endY = -cellSize;
-                } else {
-                    Log.d(TAG, "roundy is below SW-NE diagonal");
-                    endX = gridViewWidth;
-                    endY = startY - (gridViewWidth - startX);
-                }
-                break;
-            case SOUTH_WEST:
-                if (roundy.getCellIndex() % (Constants.GRID_SIZE - 1) == 0) {
-                    Log.d(TAG, "roundy is on SW-NE diagonal");
-                    endX = -roundySize;
-                    endY = gridViewHeight;
-                } else if (startX + startY < gridViewHeight) {
-                    Log.d(TAG, "roundy is above SW-NE diagonal");
-                    endX = -cellSize;
-                    endY = startX + startY + cellSize;
-                } else {
-                    Log.d(TAG, "roundy is below SW-NE diagonal");
-                    endX = gridViewWidth - (gridViewHeight - (startY - (gridViewWidth - startX)));
-                    endY = gridViewHeight;
-                }
-                break;
-            case NORTH_WEST:
-                if (startX < startY) {
-                    Log.d(TAG, "roundy is below NW-SE diagonal");
-                    endX = -roundySize;
-                    endY = startY - startX - roundySize;
-                } else if (startX == startY) {
-                    Log.d(TAG, "roundy is on NW-SE diagonal");
-                    endX = -roundySize;
-                    endY = -roundySize;
-                } else {
-                    Log.d(TAG, "roundy is above NW-SE diagonal");
-                    endX = startX - startY - roundySize;
-                    endY = -roundySize;
-                }
-                break;
-            case SOUTH_EAST:
-                if (startX < startY) {
-                    Log.d(TAG, "roundy is below NW-SE diagonal");
-                    endX = startX + gridViewHeight - startY;
-                    endY = gridViewHeight;
-                } else if (startX == startY) {
-                    Log.d(TAG, "roundy is on NW-SE diagonal");
-                    endX = gridViewWidth;
-                    endY = gridViewHeight;
-                } else {
-                    Log.d(TAG, "roundy is above NW-SE diagonal");
-                    endX = gridViewWidth;
-                    endY = startY + gridViewWidth - startX;
-                }
-                break;
+    public void play(Chain chain, BoardView.RoundySprite[] roundySprites) {
+        hops = chain.getLength();
+        ensureCapacity(hops);
+        for (int i = 0; i < hops; i++) {
+            BoardView.RoundySprite sprite = roundySprites[chain.getRoundyId(i)];
+            if (i < hops - 1) {
+                BoardView.RoundySprite hitSprite = roundySprites[chain.getRoundyId(i + 1)];
+                targetX = hitSprite.getX();
+                targetY = hitSprite.getY();
+            } else {
+                targetX = exitPoints.getX(chain.getDirection(), chain.getCellIndex(i));
+                targetY = exitPoints.getY(chain.getDirection(), chain.getCellIndex(i));
+            }
+            hopSprites[i] = sprite;
+            startXs[i] = sprite.getX();
+            startYs[i] = sprite.getY();
+            endXs[i] = targetX;
+            endYs[i] = targetY;
         }
 
-        LogUtility.logMove(view, endX, endY);
+        this.chain = chain;
+        movingHops = 0;
+        timelineStart = System.nanoTime();
+        timeline.setDuration(Constants.MOVE_SPEED * hops);
+        timeline.start();
+    }
 
-        view.animate().x(endX).y(endY).setDuration(Constants.MOVE_SPEED).setListener(new AnimatorListenerAdapter() {
-            @Override
-            public void onAnimationEnd(Animator animation) {
-                super.onAnimationEnd(animation);
-                listener.onMoveOutAnimationEnd(roundy);
-            }
-        });
+    private void ensureCapacity(int hops) {
+        if (hopSprites.length < hops) {
+            hopSprites = new BoardView.RoundySprite[hops];
+            startXs = new float[hops];
+            startYs = new float[hops];
+            endXs = new float[hops];
+            endYs = new float[hops];
+        }
     }
+
+    /**
+     * Place the roundies of the chain along the timeline: each one stays still until the previous
+     * roundy hits it, rolls during its own hop, then stays still until the end of the chain.
+     */
+    private final ValueAnimator.AnimatorUpdateListener timelineUpdateListener = new ValueAnimator.AnimatorUpdateListener() {
+        @Override
+        public void onAnimationUpdate(ValueAnimator animation) {
+            float position = animation.getAnimatedFraction() * hops;
+
+            // each roundy gets the background of the roundies on the move when its hop starts
+            int hop = Math.min(hops - 1, (int) position);
+            while (movingHops <= hop) {
+                hopSprites[movingHops++].setBackground(onTheMoveBg);
+            }
+
+            for (int i = 0; i < hops; i++) {
+                float hopFraction = Math.max(0f, Math.min(1f, position - i));
+                float progress = hopInterpolator.getInterpolation(hopFraction);
+                hopSprites[i].setX(startXs[i] + (endXs[i] - startXs[i]) * progress);
+                hopSprites[i].setY(startYs[i] + (endYs[i] - startYs[i]) * progress);
+            }
+        }
+    };
+
+    private final AnimatorListenerAdapter timelineListener = new AnimatorListenerAdapter() {
+        @Override
+        public void onAnimationEnd(Animator animation) {
+            super.onAnimationEnd(animation);
+            if (chainAnimationLatency != null) {
+                chainAnimationLatency.recordSince(timelineStart);
+            }
+            Chain playedChain = chain;
+            chain = null;
+            for (int i = 0; i < hops; i++) {
+                hopSprites[i] = null;
+            }
+            listener.onChainAnimationEnd(playedChain);
+        }
+    };
 }
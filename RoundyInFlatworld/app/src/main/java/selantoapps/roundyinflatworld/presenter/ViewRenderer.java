@@ -1,21 +1,54 @@
 package selantoapps.roundyinflatworld.presenter;
 
-import android.view.View;
+import android.graphics.drawable.Drawable;
+
+import selantoapps.roundyinflatworld.widget.BoardView;
 
 public interface ViewRenderer {
-    void removeView(View view);
+    void removeSprite(BoardView.RoundySprite sprite);
 
     void refresh();
 
     void enableInput(boolean enable);
 
-    View createRoundyView(int id, int rowIndex, int columnIndex, int bgResId);
+    BoardView.RoundySprite createSprite(int id, int rowIndex, int columnIndex, int bgResId);
+
+    void addSprite(BoardView.RoundySprite sprite);
+
+    /**
+     * @return the drawable of the resource, the same one for all the sprites, to compare the
+     * backgrounds of the sprites by identity
+     */
+    Drawable getDrawable(int resId);
 
-    void addView(View roundyView);
+    /**
+     * @param listener told the id of each roundy tapped
+     */
+    void setOnRoundyClickListener(BoardView.OnRoundyClickListener listener);
 
     void showToast(int stringResId);
 
     void showToast(int stringResId, String argument);
 
-    void showAsHappy(boolean happy, View view);
+    /**
+     * May only take effect at the next {@link #commit()}.
+     */
+    void showAsHappy(boolean happy, BoardView.RoundySprite sprite);
+
+    /**
+     * Change the hints shown over the specified roundies, keeping the hints of the others.
+     *
+     * @param roundyIds      roundies whose hints changed
+     * @param directionMasks for each roundy, a bit by ordinal of the directions it can be clicked
+     *                       towards, none for no ticks
+     * @param endangered     for each roundy, true if a click may kill it
+     */
+    void showHints(int[] roundyIds, int[] directionMasks, boolean[] endangered);
+
+    void hideHints();
+
+    /**
+     * Show the changes made since the last commit, at most once per frame.
+     */
+    void commit();
 }
@@ -1,6 +1,7 @@
 package selantoapps.roundyinflatworld.settings;
 
 public class Constants {
+    // defaults, see MainActivity.EXTRA_GRID_SIZE and MainActivity.EXTRA_ROUNDY_COUNT
     public static final int ROUNDY_COUNT = 8;
     public static final int GRID_SIZE = 8; // 8 x 8 grid
     public static final long MOVE_SPEED = 600;
@@ -1,15 +0,0 @@
-package selantoapps.roundyinflatworld.settings;
-
-/**
- * Those are the directions defined by the game design in which a roundy can roll in the Flatworld
- */
-public enum Direction {
-    NORTH,
-    NORTH_EAST,
-    EAST,
-    SOUTH_EAST,
-    SOUTH,
-    SOUTH_WEST,
-    WEST,
-    NORTH_WEST
-}
@@ -1,43 +1,52 @@
 package selantoapps.roundyinflatworld.utils;
 
 import android.util.Log;
-import android.view.View;
 
 import selantoapps.roundyinflatworld.model.Roundy;
+import selantoapps.roundyinflatworld.settings.Direction;
 
 public class LogUtility {
 
     private static final String TAG = LogUtility.class.getSimpleName();
 
     public static void logCollisions(String tag, Roundy[] roundies) {
+        if (!Log.isLoggable(tag, Log.DEBUG)) {
+            return;
+        }
         StringBuilder collisionsLog = new StringBuilder();
         for (Roundy roundy : roundies) {
             if (roundy == null) {
                 continue;
             }
-            for (int collidesWithIndex : roundy.getCollisions().keySet()) {
-                collisionsLog.append(roundy.getId())
-                        .append(" collides with ")
-                        .append(collidesWithIndex)
-                        .append(" towards ")
-                        .append(roundy.getCollisions().get(collidesWithIndex).name())
-                        .append("\n");
+            for (Direction direction : Direction.values()) {
+                if (roundy.hasCollisionTowards(direction)) {
+                    collisionsLog.append(roundy.getId())
+                            .append(" collides with ")
+                            .append(roundy.getClosestId(direction))
+                            .append(" towards ")
+                            .append(direction.name())
+                            .append(" (")
+                            .append(roundy.getCollisionCount(direction))
+                            .append(" in total)\n");
+                }
             }
         }
         Log.d(tag + " - " + TAG, collisionsLog.toString());
     }
 
-    public static void logViewPosition(View view) {
-        Log.d(TAG, "logViewPosition");
-        Log.d(TAG, "x " + view.getX() + " left " + view.getLeft()
-                + " y " + view.getY() + " top " + view.getTop());
-    }
-
-    public static void logMove(View viewA, View viewB) {
-        logMove(viewA, viewB.getX(), viewB.getY());
+    public static void logTrace(String tag, EventTracer tracer) {
+        if (!Log.isLoggable(tag, Log.DEBUG) || tracer.size() == 0) {
+            return;
+        }
+        StringBuilder traceLog = new StringBuilder();
+        tracer.dump(traceLog);
+        Log.d(tag + " - " + TAG, traceLog.toString());
     }
 
-    public static void logMove(View view, float endX, float endY) {
-        Log.d(TAG, "moving x: " + view.getX() + " -> " + endX + ", y: " + view.getY() + " -> " + endY);
+    public static void logMetrics(String tag, MetricsRegistry metrics) {
+        if (!Log.isLoggable(tag, Log.DEBUG)) {
+            return;
+        }
+        Log.d(tag + " - " + TAG, metrics.toString());
     }
 }
@@ -0,0 +1,462 @@
+package selantoapps.roundyinflatworld.widget;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.drawable.Drawable;
+import android.support.annotation.Nullable;
+import android.support.v4.content.ContextCompat;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.View;
+
+import java.util.Arrays;
+
+import selantoapps.roundyinflatworld.R;
+import selantoapps.roundyinflatworld.settings.Constants;
+import selantoapps.roundyinflatworld.settings.Direction;
+
+/**
+ * Square board which draws the grid and all the roundies in a single {@link #onDraw(Canvas)},
+ * whatever the size of the grid.
+ * <p>
+ * Each roundy is a {@link RoundySprite}: not a view, only the id, the position and the background
+ * of the roundy. Moving a sprite with {@link RoundySprite#setX(float)} and
+ * {@link RoundySprite#setY(float)} or changing its background redraws the board.
+ * <p>
+ * A tap on a cell is sent to the {@link OnRoundyClickListener} with the id of the sprite in that
+ * cell, if any: a single listener for all the roundies.
+ * <p>
+ * Hints set by {@link #updateHints(int[], int[], boolean[])} are drawn over the sprites: a tick on
+ * the side of each direction a roundy can be clicked towards, a ring around the roundies which a
+ * click may kill.
+ */
+public class BoardView extends View {
+
+    private static final String TAG = BoardView.class.getSimpleName();
+
+    // below this size, in pixels, ids are not readable anymore and are not drawn
+    private static final int MIN_LABEL_ROUNDY_SIZE = 24;
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    // length of a step along a diagonal, so that all the ticks have the same length
+    private static final float DIAGONAL_STEP = (float) Math.sqrt(0.5);
+
+    private int gridSize = Constants.GRID_SIZE;
+
+    private int cellSize;
+
+    private int cellPadding;
+
+    private int roundySize;
+
+    private final Paint cellPaint = new Paint();
+
+    private final Paint linePaint = new Paint();
+
+    private final Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+    private float textOffset;
+
+    private float[] gridLines = new float[0];
+
+    private int gridLineCount;
+
+    // sprites drawn, by id
+    private RoundySprite[] sprites = new RoundySprite[0];
+
+    private String[] labels = new String[0];
+
+    // sprite in each cell, rebuilt by the first hit test after a sprite moved
+    private RoundySprite[] cellSprites = new RoundySprite[0];
+
+    private boolean cellSpritesDirty;
+
+    private final Paint hintPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+    // by id, directions as a bit by ordinal, 0 for roundies without hint
+    private int[] hintMasks = new int[0];
+
+    private boolean[] endangered = new boolean[0];
+
+    // number of roundies with a hint
+    private int hintCount;
+
+    private float[] hintLines = new float[0];
+
+    private OnRoundyClickListener onRoundyClickListener;
+
+    /**
+     * Told the roundies tapped on the board.
+     */
+    public interface OnRoundyClickListener {
+
+        void onRoundyClick(int id);
+    }
+
+    public BoardView(Context context) {
+        super(context);
+        init(context);
+    }
+
+    public BoardView(Context context, @Nullable AttributeSet attrs) {
+        super(context, attrs);
+        init(context);
+    }
+
+    public BoardView(Context context, @Nullable AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        init(context);
+    }
+
+    private void init(Context context) {
+        cellPaint.setColor(ContextCompat.getColor(context, R.color.cellBg));
+        linePaint.setColor(ContextCompat.getColor(context, R.color.main_bg));
+        // each cell had a margin of one line width, so two of them are between two cells
+        linePaint.setStrokeWidth(context.getResources().getDimension(R.dimen.gridLineWidth) * 2);
+        textPaint.setColor(ContextCompat.getColor(context, R.color.white));
+        textPaint.setTextAlign(Paint.Align.CENTER);
+        hintPaint.setColor(ContextCompat.getColor(context, R.color.colorAccent));
+        hintPaint.setStyle(Paint.Style.STROKE);
+    }
+
+    /**
+     * @param gridSize number of cells on each side of the grid
+     */
+    public void setGridSize(int gridSize) {
+        this.gridSize = gridSize;
+        computeGeometry(getWidth());
+        invalidate();
+    }
+
+    public int getCellSize() {
+        return cellSize;
+    }
+
+    public int getCellPadding() {
+        return cellPadding;
+    }
+
+    public int getRoundySize() {
+        return roundySize;
+    }
+
+    public void setOnRoundyClickListener(OnRoundyClickListener onRoundyClickListener) {
+        this.onRoundyClickListener = onRoundyClickListener;
+    }
+
+    @Override
+    public void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        super.onMeasure(widthMeasureSpec, widthMeasureSpec); // height equivalent to its width
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        computeGeometry(w);
+    }
+
+    private void computeGeometry(int width) {
+        cellSize = width / gridSize;
+        cellPadding = cellSize / 8;
+        roundySize = cellSize - cellPadding * 2;
+        textPaint.setTextSize(roundySize * 0.4f);
+        hintPaint.setStrokeWidth(Math.max(1, cellPadding / 2));
+        textOffset = -(textPaint.ascent() + textPaint.descent()) / 2;
+
+        // one vertical and one horizontal line on each edge of the cells, when they can be seen
+        int boardSize = cellSize * gridSize;
+        gridLineCount = cellSize > linePaint.getStrokeWidth() * 4 ? (gridSize + 1) * 2 : 0;
+        if (gridLines.length < gridLineCount * 4) {
+            gridLines = new float[gridLineCount * 4];
+        }
+        for (int i = 0, p = 0; i < gridLineCount / 2; i++) {
+            float position = i * cellSize;
+            gridLines[p++] = position;
+            gridLines[p++] = 0;
+            gridLines[p++] = position;
+            gridLines[p++] = boardSize;
+            gridLines[p++] = 0;
+            gridLines[p++] = position;
+            gridLines[p++] = boardSize;
+            gridLines[p++] = position;
+        }
+
+        if (cellSprites.length != gridSize * gridSize) {
+            cellSprites = new RoundySprite[gridSize * gridSize];
+        }
+        cellSpritesDirty = true;
+    }
+
+    /**
+     * @return a sprite in the specified cell, to be drawn once added by {@link #addSprite(RoundySprite)}
+     */
+    public RoundySprite createSprite(int id, int rowIndex, int columnIndex, Drawable background) {
+        RoundySprite sprite = new RoundySprite(this, id);
+        placeSprite(sprite, rowIndex, columnIndex, background);
+        return sprite;
+    }
+
+    /**
+     * Move a sprite, drawn or not, to the specified cell, e.g. to use it again for a new roundy
+     * with the same id.
+     */
+    public void placeSprite(RoundySprite sprite, int rowIndex, int columnIndex, Drawable background) {
+        sprite.setX(cellSize * columnIndex + cellPadding);
+        sprite.setY(cellSize * rowIndex + cellPadding);
+        sprite.setBackground(background);
+    }
+
+    public void addSprite(RoundySprite sprite) {
+        int id = sprite.getRoundyId();
+        if (id >= sprites.length) {
+            int length = Math.max(id + 1, sprites.length * 2);
+            sprites = Arrays.copyOf(sprites, length);
+            labels = Arrays.copyOf(labels, length);
+        }
+        if (labels[id] == null) {
+            labels[id] = String.valueOf(id);
+        }
+        sprites[id] = sprite;
+        onSpriteChanged();
+    }
+
+    public void removeSprite(RoundySprite sprite) {
+        int id = sprite.getRoundyId();
+        if (id < sprites.length && sprites[id] == sprite) {
+            sprites[id] = null;
+            onSpriteChanged();
+        }
+    }
+
+    /**
+     * Change the hints drawn over the specified sprites, keeping the hints of the others.
+     *
+     * @param roundyIds      roundies whose hints changed
+     * @param directionMasks for each roundy, a bit by ordinal of the directions it can be clicked
+     *                       towards, none for no ticks
+     * @param endangered     for each roundy, true if a click may kill it
+     */
+    public void updateHints(int[] roundyIds, int[] directionMasks, boolean[] endangered) {
+        for (int i = 0; i < roundyIds.length; i++) {
+            int id = roundyIds[i];
+            if (id >= hintMasks.length) {
+                int length = Math.max(id + 1, hintMasks.length * 2);
+                hintMasks = Arrays.copyOf(hintMasks, length);
+                this.endangered = Arrays.copyOf(this.endangered, length);
+                // at most 8 ticks by roundy
+                hintLines = new float[length * DIRECTIONS.length * 4];
+            }
+            if (hasHint(id)) {
+                hintCount--;
+            }
+            hintMasks[id] = directionMasks[i];
+            this.endangered[id] = endangered[i];
+            if (hasHint(id)) {
+                hintCount++;
+            }
+        }
+        invalidate();
+    }
+
+    /**
+     * Hide all the hints.
+     */
+    public void clearHints() {
+        Arrays.fill(hintMasks, 0);
+        Arrays.fill(endangered, false);
+        hintCount = 0;
+        invalidate();
+    }
+
+    private boolean hasHint(int id) {
+        return hintMasks[id] != 0 || endangered[id];
+    }
+
+    private void onSpriteChanged() {
+        cellSpritesDirty = true;
+        invalidate();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        int boardSize = cellSize * gridSize;
+        canvas.drawRect(0, 0, boardSize, boardSize, cellPaint);
+        if (gridLineCount > 0) {
+            canvas.drawLines(gridLines, 0, gridLineCount * 4, linePaint);
+        }
+
+        boolean drawLabels = roundySize >= MIN_LABEL_ROUNDY_SIZE;
+        float half = roundySize / 2f;
+        for (RoundySprite sprite : sprites) {
+            if (sprite == null) {
+                continue;
+            }
+            int x = (int) sprite.getX();
+            int y = (int) sprite.getY();
+            Drawable background = sprite.getBackground();
+            if (background != null) {
+                // a drawable can be the background of many sprites, placed on each one in turn
+                background.setBounds(x, y, x + roundySize, y + roundySize);
+                background.draw(canvas);
+            }
+            if (drawLabels) {
+                canvas.drawText(labels[sprite.getRoundyId()], x + half, y + half + textOffset, textPaint);
+            }
+        }
+        if (hintCount > 0) {
+            drawHints(canvas);
+        }
+    }
+
+    private void drawHints(Canvas canvas) {
+        float half = roundySize / 2f;
+        // from the border of the roundy to the border of its cell
+        float tickStart = half;
+        float tickEnd = half + cellPadding;
+        int p = 0;
+        for (int id = 0; id < hintMasks.length; id++) {
+            RoundySprite sprite = id < sprites.length ? sprites[id] : null;
+            if (sprite == null || !hasHint(id)) {
+                continue;
+            }
+            float centerX = sprite.getX() + half;
+            float centerY = sprite.getY() + half;
+            if (endangered[id]) {
+                canvas.drawCircle(centerX, centerY, tickStart, hintPaint);
+            }
+            int mask = hintMasks[id];
+            for (Direction direction : DIRECTIONS) {
+                if ((mask & (1 << direction.ordinal())) == 0) {
+                    continue;
+                }
+                float stepX = direction.getColumnStep();
+                float stepY = direction.getRowStep();
+                if (stepX != 0 && stepY != 0) {
+                    stepX *= DIAGONAL_STEP;
+                    stepY *= DIAGONAL_STEP;
+                }
+                hintLines[p++] = centerX + stepX * tickStart;
+                hintLines[p++] = centerY + stepY * tickStart;
+                hintLines[p++] = centerX + stepX * tickEnd;
+                hintLines[p++] = centerY + stepY * tickEnd;
+            }
+        }
+        if (p > 0) {
+            canvas.drawLines(hintLines, 0, p, hintPaint);
+        }
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                return true;
+            case MotionEvent.ACTION_UP:
+                RoundySprite sprite = getSpriteAt(event.getX(), event.getY());
+                if (sprite != null && onRoundyClickListener != null) {
+                    onRoundyClickListener.onRoundyClick(sprite.getRoundyId());
+                }
+                performClick();
+                return true;
+            default:
+                return super.onTouchEvent(event);
+        }
+    }
+
+    @Override
+    public boolean performClick() {
+        return super.performClick();
+    }
+
+    /**
+     * @return the sprite in the cell at the specified point of the board, null if none
+     */
+    public RoundySprite getSpriteAt(float x, float y) {
+        if (cellSize == 0 || x < 0 || y < 0) {
+            return null;
+        }
+        int columnIndex = (int) x / cellSize;
+        int rowIndex = (int) y / cellSize;
+        if (columnIndex >= gridSize || rowIndex >= gridSize) {
+            return null;
+        }
+        if (cellSpritesDirty) {
+            indexSprites();
+        }
+        return cellSprites[rowIndex * gridSize + columnIndex];
+    }
+
+    /**
+     * Put each sprite in the cell under its center.
+     */
+    private void indexSprites() {
+        Arrays.fill(cellSprites, null);
+        float half = roundySize / 2f;
+        for (RoundySprite sprite : sprites) {
+            if (sprite == null) {
+                continue;
+            }
+            int columnIndex = (int) ((sprite.getX() + half) / cellSize);
+            int rowIndex = (int) ((sprite.getY() + half) / cellSize);
+            if (columnIndex >= 0 && columnIndex < gridSize && rowIndex >= 0 && rowIndex < gridSize) {
+                cellSprites[rowIndex * gridSize + columnIndex] = sprite;
+            }
+        }
+        cellSpritesDirty = false;
+    }
+
+    /**
+     * A roundy drawn by a {@link BoardView}: where it is and how it looks.
+     */
+    public static final class RoundySprite {
+
+        private final BoardView board;
+
+        private final int id;
+
+        private float x;
+
+        private float y;
+
+        private Drawable background;
+
+        RoundySprite(BoardView board, int id) {
+            this.board = board;
+            this.id = id;
+        }
+
+        public int getRoundyId() {
+            return id;
+        }
+
+        public float getX() {
+            return x;
+        }
+
+        public float getY() {
+            return y;
+        }
+
+        public Drawable getBackground() {
+            return background;
+        }
+
+        public void setX(float x) {
+            this.x = x;
+            board.onSpriteChanged();
+        }
+
+        public void setY(float y) {
+            this.y = y;
+            board.onSpriteChanged();
+        }
+
+        public void setBackground(Drawable background) {
+            this.background = background;
+            board.invalidate();
+        }
+    }
+}
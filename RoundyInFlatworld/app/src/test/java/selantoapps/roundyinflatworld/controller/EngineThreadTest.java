@@ -0,0 +1,102 @@
+package selantoapps.roundyinflatworld.controller;
+
+import org.junit.Test;
+
+import selantoapps.roundyinflatworld.utils.MetricsRegistry;
+import selantoapps.roundyinflatworld.utils.SpscQueue;
+import selantoapps.roundyinflatworld.utils.SplitMixRandomSource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class EngineThreadTest {
+
+    private static final int GRID_SIZE = 8;
+    private static final int ROUNDY_COUNT = 3;
+
+    private final SpscQueue<EngineCommand> commands = new SpscQueue<>(16);
+    private final SpscQueue<RenderDelta> deltas = new SpscQueue<>(16);
+
+    /**
+     * Roundies 0, 1 and 2 side by side: clicking 0 pushes 1, which pushes 2 off the grid, and 0
+     * and 1 are unhappy before and after the chain.
+     */
+    @Test
+    public void chainSurvivorsArePublishedAgainAtTheEndOfTheChain() {
+        EngineThread engine = newEngine();
+        commands.offer(EngineCommand.start(newSnapshot()));
+        commands.offer(EngineCommand.click(0));
+        commands.offer(EngineCommand.of(EngineCommand.CHAIN_ANIMATION_END));
+        commands.offer(EngineCommand.of(EngineCommand.SHUTDOWN));
+        // handles the commands on this thread, until the shutdown
+        engine.run();
+
+        RenderDelta happiness = null;
+        boolean chainPlayed = false;
+        RenderDelta delta;
+        while ((delta = deltas.poll()) != null) {
+            if (delta.type == RenderDelta.CHAIN) {
+                assertEquals(2, delta.chain.getDeadRoundyId());
+                chainPlayed = true;
+            } else if (delta.type == RenderDelta.HAPPINESS && chainPlayed) {
+                happiness = delta;
+            }
+        }
+        assertNotNull("no happiness published after the chain", happiness);
+        assertEquals(2, happiness.roundyIds.length);
+        for (int i = 0; i < happiness.roundyIds.length; i++) {
+            assertTrue(happiness.roundyIds[i] == 0 || happiness.roundyIds[i] == 1);
+            assertEquals(false, happiness.happy[i]);
+        }
+    }
+
+    /**
+     * Hints found again on an unchanged board are not published again, while hints shown again
+     * after hiding them are.
+     */
+    @Test
+    public void unchangedHintsAreNotPublishedAgain() {
+        EngineThread engine = newEngine();
+        commands.offer(EngineCommand.start(newSnapshot()));
+        commands.offer(EngineCommand.showHints(true));
+        // publishes the hints found on the same board
+        commands.offer(EngineCommand.of(EngineCommand.CHAIN_ANIMATION_END));
+        commands.offer(EngineCommand.showHints(false));
+        commands.offer(EngineCommand.showHints(true));
+        commands.offer(EngineCommand.of(EngineCommand.SHUTDOWN));
+        engine.run();
+
+        StringBuilder types = new StringBuilder();
+        RenderDelta delta;
+        while ((delta = deltas.poll()) != null) {
+            if (delta.type == RenderDelta.HINTS) {
+                // roundy 0 towards east, roundy 1 towards west, and roundy 2 towards west too
+                assertEquals(3, delta.roundyIds.length);
+                types.append('H');
+            } else if (delta.type == RenderDelta.HINTS_CLEARED) {
+                types.append('C');
+            }
+        }
+        assertEquals("HCH", types.toString());
+    }
+
+    private EngineThread newEngine() {
+        Flatworld flatworld = new Flatworld(GRID_SIZE, ROUNDY_COUNT, new SplitMixRandomSource(1));
+        return new EngineThread(flatworld, new MetricsRegistry(), commands, deltas, new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+    }
+
+    private static byte[] newSnapshot() {
+        Flatworld board = new Flatworld(GRID_SIZE, ROUNDY_COUNT, new SplitMixRandomSource(1));
+        board.init();
+        for (int id = 0; id < ROUNDY_COUNT; id++) {
+            board.placeRoundy(id, id);
+        }
+        board.findUnhappyRoundies();
+        return FlatworldSnapshot.save(board, 0);
+    }
+}
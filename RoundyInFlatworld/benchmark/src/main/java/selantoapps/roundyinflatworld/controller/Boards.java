@@ -0,0 +1,81 @@
+package selantoapps.roundyinflatworld.controller;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.Random;
+
+import selantoapps.roundyinflatworld.model.Chain;
+
+import selantoapps.roundyinflatworld.utils.JavaRandomSource;
+import selantoapps.roundyinflatworld.utils.SplitMixRandomSource;
+
+/**
+ * Builds the boards used by the benchmarks, always the same for the same parameters.
+ */
+final class Boards {
+
+    static final long SEED = 42;
+
+    private Boards() {
+    }
+
+    /**
+     * @param compactRoundies see {@link Flatworld#setCompactRoundies(boolean)}
+     * @return a Flatworld with all its roundies placed and their collisions marked
+     * @throws IllegalArgumentException if the detector cannot handle such a board: JMH reports the
+     *                                  run of that combination of parameters as failed, with the
+     *                                  stack trace, and goes on with the next one
+     */
+    static Flatworld newFlatworld(DetectorType detectorType, int gridSize, Density density,
+                                  boolean incrementalCollisions, boolean compactRoundies) {
+        int roundyCount = density.getRoundyCount(gridSize);
+        if (!detectorType.supports(gridSize, roundyCount)) {
+            throw new IllegalArgumentException(detectorType + " does not support a grid of "
+                    + gridSize + "x" + gridSize + " with " + roundyCount + " roundies");
+        }
+
+        Flatworld flatworld = new Flatworld(detectorType.create(gridSize), gridSize, roundyCount,
+                new JavaRandomSource(new Random(SEED)));
+        flatworld.setIncrementalCollisions(incrementalCollisions);
+        flatworld.setCompactRoundies(compactRoundies);
+        flatworld.init();
+        for (int id = 0; id < roundyCount - 1; id++) {
+            flatworld.placeRoundy(id);
+        }
+        flatworld.addRoundy(roundyCount - 1);
+        return flatworld;
+    }
+
+    /**
+     * Record a game as the player of the app does: random clicks, each dead roundy added back in a
+     * random free cell.
+     *
+     * @return the {@link ReplayLog} of the game, with the state reached at its end
+     */
+    static byte[] recordGame(int gridSize, Density density, boolean incrementalCollisions, int clickCount)
+            throws IOException {
+        int roundyCount = density.getRoundyCount(gridSize);
+        Flatworld flatworld = new Flatworld(gridSize, roundyCount, new SplitMixRandomSource(SEED));
+        flatworld.setIncrementalCollisions(incrementalCollisions);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ReplayLog replayLog = new ReplayLog(Channels.newChannel(bytes));
+        flatworld.setReplayLog(replayLog);
+        flatworld.init();
+        for (int id = 0; id < roundyCount - 1; id++) {
+            flatworld.placeRoundy(id);
+        }
+        flatworld.addRoundy(roundyCount - 1);
+
+        Random random = new Random(SEED);
+        for (int i = 0; i < clickCount; i++) {
+            Chain chain = flatworld.click(random.nextInt(roundyCount));
+            if (chain != null) {
+                flatworld.addRoundy(chain.getDeadRoundyId());
+            }
+        }
+        replayLog.recordState(flatworld);
+        replayLog.close();
+        return bytes.toByteArray();
+    }
+}
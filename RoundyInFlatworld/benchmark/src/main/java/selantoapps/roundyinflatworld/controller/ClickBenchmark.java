@@ -0,0 +1,72 @@
+package selantoapps.roundyinflatworld.controller;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import selantoapps.roundyinflatworld.model.Chain;
+
+/**
+ * Measures a whole move of the game: the click on a roundy, the chain of collisions it causes and
+ * the death of the last roundy of the chain.
+ * <p>
+ * The dead roundy is added back in a random free cell, as the player does in the app, so the
+ * density of the board does not change along the measurement.
+ * <p>
+ * With allocationFree set, the gc profiler (./gradlew :benchmark:jmh) should report a
+ * gc.alloc.rate.norm close to 0 B/op: in steady state neither the click nor the respawn allocate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+// the largest boards hold millions of roundies
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class ClickBenchmark {
+
+    @Param({"8", "64", "512", "4096"})
+    public int gridSize;
+
+    @Param({"SPARSE", "QUARTER", "THREE_QUARTERS", "NEAR_FULL"})
+    public Density density;
+
+    @Param({"NAIVE", "LINE_INDEX", "SPARSE_LINES", "BITBOARD"})
+    public DetectorType detector;
+
+    @Param({"true", "false"})
+    public boolean incrementalCollisions;
+
+    @Param({"true", "false"})
+    public boolean allocationFree;
+
+    private Flatworld flatworld;
+    private Random random;
+
+    @Setup
+    public void setUp() {
+        flatworld = Boards.newFlatworld(detector, gridSize, density, incrementalCollisions, false);
+        flatworld.setAllocationFree(allocationFree);
+        random = new Random(Boards.SEED);
+    }
+
+    @Benchmark
+    public Chain clickAndRespawn() {
+        Chain chain = flatworld.click(random.nextInt(flatworld.getRoundyCount()));
+        if (chain != null) {
+            flatworld.addRoundy(chain.getDeadRoundyId());
+        }
+        return chain;
+    }
+}
@@ -0,0 +1,109 @@
+package selantoapps.roundyinflatworld.controller;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import selantoapps.roundyinflatworld.model.Roundy;
+import selantoapps.roundyinflatworld.settings.Direction;
+
+/**
+ * Measures how fast a {@link CollisionDetector} finds all the collisions of a board, and the
+ * closest roundy of a roundy in a direction.
+ * <p>
+ * It lives in the package of the detectors to reach {@link CollisionDetector#lookUpClosest}, the
+ * search the detectors run while they update the collisions on each move.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+// the largest boards hold millions of roundies
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class CollisionDetectorBenchmark {
+
+    private static final int PROBES = 1024;
+
+    @Param({"8", "64", "512", "4096"})
+    public int gridSize;
+
+    @Param({"SPARSE", "QUARTER", "THREE_QUARTERS", "NEAR_FULL"})
+    public Density density;
+
+    @Param({"NAIVE", "LINE_INDEX", "SPARSE_LINES", "BITBOARD"})
+    public DetectorType detector;
+
+    // roundies in their own objects or in the parallel arrays of a RoundyStore
+    @Param({"false", "true"})
+    public boolean compactRoundies;
+
+    private CollisionDetector collisionDetector;
+    private Roundy[] roundies;
+    private int collisionsFound;
+
+    // roundies and directions to look up, taken among the possible collisions
+    private final Roundy[] probeRoundies = new Roundy[PROBES];
+    private final Direction[] probeDirections = new Direction[PROBES];
+    private int probe;
+
+    private final CollisionListener collisionListener = new CollisionListener() {
+        @Override
+        public void onCollisionFound(Roundy roundyA, Roundy roundyB) {
+            collisionsFound++;
+        }
+
+        @Override
+        public void onNoMoreCollisions(Roundy roundy) {
+        }
+    };
+
+    @Setup
+    public void setUp() {
+        collisionDetector = detector.create(gridSize);
+        roundies = Boards.newFlatworld(detector, gridSize, density, true, compactRoundies).getRoundies();
+        markCollisions();
+
+        Random random = new Random(Boards.SEED);
+        for (int i = 0; i < PROBES; i++) {
+            Roundy roundy = roundies[random.nextInt(roundies.length)];
+            probeRoundies[i] = roundy;
+            probeDirections[i] = roundy.hasCollisions()
+                    ? roundy.getCollisionDirection(random.nextInt(roundy.getCollisionCount()))
+                    : Direction.NORTH;
+        }
+    }
+
+    @Benchmark
+    public int markCollisions() {
+        for (Roundy roundy : roundies) {
+            roundy.resetCollisions();
+        }
+        collisionsFound = 0;
+        collisionDetector.markCollisions(roundies, collisionListener);
+        return collisionsFound;
+    }
+
+    @Benchmark
+    public Roundy findClosest() {
+        int i = probe++ & (PROBES - 1);
+        return collisionDetector.findClosest(probeRoundies[i], roundies, probeDirections[i]);
+    }
+
+    @Benchmark
+    public Roundy lookUpClosest() {
+        int i = probe++ & (PROBES - 1);
+        return collisionDetector.lookUpClosest(probeRoundies[i], roundies, probeDirections[i]);
+    }
+}
@@ -0,0 +1,23 @@
+package selantoapps.roundyinflatworld.controller;
+
+/**
+ * How many cells of the grid are occupied by roundies in a benchmark.
+ */
+public enum Density {
+    SPARSE(0.01), QUARTER(0.25), THREE_QUARTERS(0.75), NEAR_FULL(0.99);
+
+    private final double occupiedFraction;
+
+    Density(double occupiedFraction) {
+        this.occupiedFraction = occupiedFraction;
+    }
+
+    /**
+     * @param gridSize size of the side of the grid
+     * @return number of roundies in the grid, at least 2 and leaving at least one free cell
+     */
+    public int getRoundyCount(int gridSize) {
+        int cellCount = gridSize * gridSize;
+        return Math.min(cellCount - 1, Math.max(2, (int) (cellCount * occupiedFraction)));
+    }
+}
@@ -0,0 +1,67 @@
+package selantoapps.roundyinflatworld.controller;
+
+/**
+ * The collision detectors compared by the benchmarks.
+ */
+public enum DetectorType {
+
+    /**
+     * The pairwise {@link CollisionDetector}, the reference the other ones are compared against.
+     * It compares every couple of roundies, so it does not support the boards where a single
+     * {@link CollisionDetector#markCollisions} would take minutes: the setup of those combinations
+     * of parameters fails.
+     */
+    NAIVE {
+        @Override
+        public boolean supports(int gridSize, int roundyCount) {
+            return roundyCount <= MAX_NAIVE_ROUNDY_COUNT;
+        }
+
+        @Override
+        public CollisionDetector create(int gridSize) {
+            return new CollisionDetector(gridSize);
+        }
+    },
+
+    LINE_INDEX {
+        @Override
+        public boolean supports(int gridSize, int roundyCount) {
+            return true;
+        }
+
+        @Override
+        public CollisionDetector create(int gridSize) {
+            return new LineIndexCollisionDetector(gridSize);
+        }
+    },
+
+    SPARSE_LINES {
+        @Override
+        public boolean supports(int gridSize, int roundyCount) {
+            return true;
+        }
+
+        @Override
+        public CollisionDetector create(int gridSize) {
+            return new SparseCollisionDetector(gridSize);
+        }
+    },
+
+    BITBOARD {
+        @Override
+        public boolean supports(int gridSize, int roundyCount) {
+            return gridSize == BitboardCollisionDetector.GRID_SIZE;
+        }
+
+        @Override
+        public CollisionDetector create(int gridSize) {
+            return new BitboardCollisionDetector();
+        }
+    };
+
+    private static final int MAX_NAIVE_ROUNDY_COUNT = 4096;
+
+    public abstract boolean supports(int gridSize, int roundyCount);
+
+    public abstract CollisionDetector create(int gridSize);
+}
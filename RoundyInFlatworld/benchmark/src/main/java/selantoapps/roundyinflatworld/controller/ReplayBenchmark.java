@@ -0,0 +1,85 @@
+package selantoapps.roundyinflatworld.controller;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the collision detectors on whole games played again from a {@link ReplayLog}, with
+ * the mix of placements, clicks and respawns of a real game.
+ * <p>
+ * By default the game is recorded in the setup, clicking at random; a game recorded by the app
+ * can be played instead with -p replayFile=path/to/game.rifr, in which case gridSize and density
+ * are ignored.
+ * <p>
+ * The setup fails for the detectors which do not support the board, and JMH reports those runs
+ * as failed: -p detector=... leaves them out.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReplayBenchmark {
+
+    private static final int CLICK_COUNT = 10000;
+
+    @Param({""})
+    public String replayFile;
+
+    @Param({"8", "64"})
+    public int gridSize;
+
+    @Param({"QUARTER", "THREE_QUARTERS"})
+    public Density density;
+
+    @Param({"NAIVE", "LINE_INDEX", "SPARSE_LINES", "BITBOARD"})
+    public DetectorType detector;
+
+    private byte[] replayLog;
+
+    @Setup
+    public void setUp() throws IOException {
+        if (replayFile.isEmpty()) {
+            if (!detector.supports(gridSize, density.getRoundyCount(gridSize))) {
+                throw new IllegalArgumentException(detector + " does not support a grid of " + gridSize
+                        + "x" + gridSize);
+            }
+            replayLog = Boards.recordGame(gridSize, density, true, CLICK_COUNT);
+        } else {
+            replayLog = Files.readAllBytes(Paths.get(replayFile));
+        }
+    }
+
+    @Benchmark
+    public long replay() throws IOException {
+        ReplayPlayer player = new ReplayPlayer(Channels.newChannel(new ByteArrayInputStream(replayLog))) {
+            @Override
+            protected CollisionDetector createCollisionDetector(int gridSize) {
+                if (!detector.supports(gridSize, 0)) {
+                    throw new IllegalArgumentException(detector + " does not support a grid of " + gridSize
+                            + "x" + gridSize);
+                }
+                return detector.create(gridSize);
+            }
+        };
+        player.play();
+        return player.getClickCount();
+    }
+}
@@ -0,0 +1,134 @@
+package selantoapps.roundyinflatworld.controller;
+
+import selantoapps.roundyinflatworld.model.Roundy;
+import selantoapps.roundyinflatworld.settings.Direction;
+
+/**
+ * A {@link CollisionDetector} for the default 8x8 Flatworld, where the whole grid fits in a single
+ * 64-bit word: bit i is set when the cell with index i is occupied.
+ * <p>
+ * For every cell and every {@link Direction} a ray mask with all the cells a roundy would roll over
+ * is precomputed, so "who can be hit in that direction" is one AND with the occupancy and "who is
+ * hit first" is a single bit scan, without loops over the grid and without allocations.
+ * <p>
+ * The occupancy is the one seen by the last {@link #markCollisions(Roundy[], CollisionListener)},
+ * kept up to date by {@link #addRoundy(Roundy, Roundy[], CollisionListener)} and
+ * {@link #removeRoundy(Roundy, Roundy[], CollisionListener)}, exactly like the collisions saved in
+ * each {@link Roundy}.
+ */
+public class BitboardCollisionDetector extends CollisionDetector {
+
+    public static final int GRID_SIZE = 8;
+
+    private static final int CELL_COUNT = GRID_SIZE * GRID_SIZE;
+
+    // RAYS[direction.ordinal()][cellIndex] has a bit set for each cell reachable from cellIndex
+    private static final long[][] RAYS = new long[DIRECTIONS.length][CELL_COUNT];
+
+    static {
+        for (Direction direction : DIRECTIONS) {
+            for (int cellIndex = 0; cellIndex < CELL_COUNT; cellIndex++) {
+                RAYS[direction.ordinal()][cellIndex] = computeRay(cellIndex, direction);
+            }
+        }
+    }
+
+    private long occupancy;
+
+    // id of the roundy occupying each cell
+    private final int[] cellRoundies = new int[CELL_COUNT];
+
+    public BitboardCollisionDetector() {
+        super(GRID_SIZE);
+    }
+
+    private static long computeRay(int cellIndex, Direction direction) {
+        int rowStep = direction.getRowStep();
+        int columnStep = direction.getColumnStep();
+        int rowIndex = cellIndex / GRID_SIZE + rowStep;
+        int columnIndex = cellIndex % GRID_SIZE + columnStep;
+
+        long ray = 0L;
+        while (rowIndex >= 0 && rowIndex < GRID_SIZE && columnIndex >= 0 && columnIndex < GRID_SIZE) {
+            ray |= 1L << (rowIndex * GRID_SIZE + columnIndex);
+            rowIndex += rowStep;
+            columnIndex += columnStep;
+        }
+        return ray;
+    }
+
+    /**
+     * Rays towards NORTH, WEST, NORTH_WEST and NORTH_EAST go towards smaller cell indexes, so the
+     * first cell hit is the highest bit of the ray; on the other directions it is the lowest one.
+     */
+    private static boolean goesTowardsLowerCells(Direction direction) {
+        return direction.getRowStep() < 0 || (direction.getRowStep() == 0 && direction.getColumnStep() < 0);
+    }
+
+    @Override
+    public boolean collides(Roundy roundyA, Roundy roundyB, Direction direction) {
+        return (RAYS[direction.ordinal()][roundyA.getCellIndex()] & (1L << roundyB.getCellIndex())) != 0;
+    }
+
+    @Override
+    public void indexRoundies(Roundy[] roundies) {
+        occupancy = 0L;
+        for (Roundy roundy : roundies) {
+            if (roundy != null) {
+                occupancy |= 1L << roundy.getCellIndex();
+                cellRoundies[roundy.getCellIndex()] = roundy.getId();
+            }
+        }
+    }
+
+    @Override
+    public void markCollisions(Roundy[] roundies, CollisionListener listener) {
+        indexRoundies(roundies);
+
+        for (Roundy roundyA : roundies) {
+            if (roundyA == null) {
+                continue;
+            }
+            for (Direction direction : DIRECTIONS) {
+                long hits = RAYS[direction.ordinal()][roundyA.getCellIndex()] & occupancy;
+                if (hits != 0) {
+                    Roundy closest = roundies[cellRoundies[getFirstHitCell(hits, direction)]];
+                    roundyA.setCollisions(direction, closest.getId(), getDistance(roundyA, closest),
+                            Long.bitCount(hits));
+                }
+            }
+        }
+        notifyCollisions(roundies, listener);
+    }
+
+    @Override
+    public void addRoundy(Roundy roundyA, Roundy[] roundies, CollisionListener listener) {
+        super.addRoundy(roundyA, roundies, listener);
+        occupancy |= 1L << roundyA.getCellIndex();
+        cellRoundies[roundyA.getCellIndex()] = roundyA.getId();
+    }
+
+    @Override
+    public void removeRoundy(Roundy roundyA, Roundy[] roundies, CollisionListener listener) {
+        // the cell may already be taken by the roundy which hit roundyA
+        if (cellRoundies[roundyA.getCellIndex()] == roundyA.getId()) {
+            occupancy &= ~(1L << roundyA.getCellIndex());
+        }
+        super.removeRoundy(roundyA, roundies, listener);
+    }
+
+    @Override
+    protected Roundy lookUpClosest(Roundy roundyA, Roundy[] roundies, Direction direction) {
+        long hits = RAYS[direction.ordinal()][roundyA.getCellIndex()] & occupancy;
+        if (hits == 0) {
+            return null;
+        }
+        return roundies[cellRoundies[getFirstHitCell(hits, direction)]];
+    }
+
+    private static int getFirstHitCell(long hits, Direction direction) {
+        return goesTowardsLowerCells(direction)
+                ? 63 - Long.numberOfLeadingZeros(hits)
+                : Long.numberOfTrailingZeros(hits);
+    }
+}
@@ -0,0 +1,18 @@
+package selantoapps.roundyinflatworld.controller;
+
+/**
+ * Told by {@link Flatworld} where the board changes, e.g. to keep a cache of what the board looks
+ * like up to date.
+ */
+public interface BoardListener {
+    /**
+     * The roundy in the cell changed: a roundy was placed there, left it or was replaced by another
+     * one.
+     */
+    void onCellChanged(int cellIndex);
+
+    /**
+     * Anything may have changed: the grid was emptied or all the collisions found again.
+     */
+    void onBoardChanged();
+}
@@ -0,0 +1,399 @@
+package selantoapps.roundyinflatworld.controller;
+
+import selantoapps.roundyinflatworld.model.Roundy;
+import selantoapps.roundyinflatworld.settings.Direction;
+
+public class CollisionDetector {
+
+    protected static final Direction[] DIRECTIONS = Direction.values();
+
+    /**
+     * One direction for each kind of line in the grid (column, SW-NE diagonal, row and NW-SE
+     * diagonal): together with their opposites they cover all the directions.
+     */
+    protected static final Direction[] LINE_DIRECTIONS = {
+            Direction.NORTH, Direction.NORTH_EAST, Direction.WEST, Direction.NORTH_WEST};
+
+    protected final int gridSize;
+
+    public CollisionDetector(int gridSize) {
+        this.gridSize = gridSize;
+    }
+
+    /**
+     * Determine if roundyA will collide with roundyB if roundyA will start moving along the
+     * direction specified
+     *
+     * @param roundyA
+     * @param roundyB
+     * @return true in case of collision, false otherwise
+     */
+    public boolean collides(Roundy roundyA, Roundy roundyB, Direction direction) {
+        switch (direction) {
+            case NORTH:
+                return collidesN(roundyA, roundyB);
+            case NORTH_EAST:
+                return collidesNE(roundyA, roundyB);
+            case EAST:
+                return collidesE(roundyA, roundyB);
+            case SOUTH_EAST:
+                return collidesSE(roundyA, roundyB);
+            case SOUTH:
+                return collidesS(roundyA, roundyB);
+            case SOUTH_WEST:
+                return collidesSW(roundyA, roundyB);
+            case WEST:
+                return collidesW(roundyA, roundyB);
+            case NORTH_WEST:
+                return collidesNW(roundyA, roundyB);
+        }
+        return false;
+    }
+
+    private boolean collidesNW(Roundy roundyA, Roundy roundyB) {
+        int rowIndex = roundyA.getRowIndex();
+        int columnIndex = roundyA.getColumnIndex();
+
+        // search N-W
+        while (rowIndex > 0 && columnIndex > 0) {
+            rowIndex--;
+            columnIndex--;
+            if (rowIndex == roundyB.getRowIndex() && columnIndex == roundyB.getColumnIndex()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean collidesSE(Roundy roundyA, Roundy roundyB) {
+        int rowIndex = roundyA.getRowIndex();
+        int columnIndex = roundyA.getColumnIndex();
+
+        // search S-E
+        while (rowIndex < gridSize && columnIndex < gridSize) {
+            rowIndex++;
+            columnIndex++;
+            if (rowIndex == roundyB.getRowIndex() && columnIndex == roundyB.getColumnIndex()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private boolean collidesNE(Roundy roundyA, Roundy roundyB) {
+        int rowIndex = roundyA.getRowIndex();
+        int columnIndex = roundyA.getColumnIndex();
+
+        // search N-E
+        while (rowIndex > 0 && columnIndex < gridSize) {
+            rowIndex--;
+            columnIndex++;
+            if (rowIndex == roundyB.getRowIndex() && columnIndex == roundyB.getColumnIndex()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private boolean collidesSW(Roundy roundyA, Roundy roundyB) {
+        int rowIndex = roundyA.getRowIndex();
+        int columnIndex = roundyA.getColumnIndex();
+
+        // search S-W
+        while (rowIndex < gridSize && columnIndex > 0) {
+            rowIndex++;
+            columnIndex--;
+            if (rowIndex == roundyB.getRowIndex() && columnIndex == roundyB.getColumnIndex()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private boolean collidesN(Roundy roundyA, Roundy roundyB) {
+        return roundyA.getColumnIndex() == roundyB.getColumnIndex() &&
+                roundyA.getRowIndex() > roundyB.getRowIndex();
+    }
+
+    private boolean collidesS(Roundy roundyA, Roundy roundyB) {
+        return roundyA.getColumnIndex() == roundyB.getColumnIndex() &&
+                roundyA.getRowIndex() < roundyB.getRowIndex();
+    }
+
+    private boolean collidesW(Roundy roundyA, Roundy roundyB) {
+        return roundyA.getRowIndex() == roundyB.getRowIndex() &&
+                roundyA.getColumnIndex() > roundyB.getColumnIndex();
+    }
+
+    private boolean collidesE(Roundy roundyA, Roundy roundyB) {
+        return roundyA.getRowIndex() == roundyB.getRowIndex() &&
+                roundyA.getColumnIndex() < roundyB.getColumnIndex();
+    }
+
+    /**
+     * Find the closest roundy that roundyA would hit when moving along the specified direction.
+     * <p>
+     * The closest roundy in each direction is computed once, when collisions are marked, so this
+     * is just a lookup in the collisions of roundyA.
+     *
+     * @param roundyA   reference roundy
+     * @param roundies  roundies in the grid, indexed by id
+     * @param direction of the movement of roundyA
+     * @return the closest roundy to roundyA along the direction, null if there is none
+     */
+    public Roundy findClosest(Roundy roundyA, Roundy[] roundies, Direction direction) {
+        int closestId = roundyA.getClosestId(direction);
+        return closestId == Roundy.NO_ROUNDY ? null : roundies[closestId];
+    }
+
+    /**
+     * Search the grid for the closest roundy that roundyA would hit when moving along the specified
+     * direction, without relying on the collisions saved so far.
+     * <p>
+     * This implementation compares roundyA with every other roundy, subclasses which keep an
+     * index of the grid look up their index instead.
+     *
+     * @param roundyA   reference roundy
+     * @param roundies  roundies in the grid, indexed by id
+     * @param direction of the movement of roundyA
+     * @return the closest roundy to roundyA along the direction, null if there is none
+     */
+    protected Roundy lookUpClosest(Roundy roundyA, Roundy[] roundies, Direction direction) {
+        Roundy closest = null;
+        for (Roundy found : roundies) {
+            if (found == null || found == roundyA || !collides(roundyA, found, direction)) {
+                continue;
+            }
+            // at each iteration compare the current closest with the new found
+            closest = closest == null ? found : findClosest(roundyA, closest, found, direction);
+        }
+        return closest;
+    }
+
+    /**
+     * Find which one between roundyB and roundyC is the closest to roundyA along the direction.
+     * <p>
+     * In case of tie, the roundy with the smallest id is returned.
+     *
+     * @param roundyA
+     * @param roundyB
+     * @param roundyC
+     * @param direction
+     * @return
+     */
+    private static Roundy findClosest(Roundy roundyA, Roundy roundyB, Roundy roundyC, Direction direction) {
+        Roundy closest;
+
+        // calculate deltas with roundyA based on row and column grid indexes
+        // which is faster than calculating the pixel distance among the roundy's view
+        int deltaB = 0, deltaC = 0;
+        switch (direction) {
+            case NORTH:
+            case SOUTH:
+            case NORTH_EAST:
+            case NORTH_WEST:
+            case SOUTH_EAST:
+            case SOUTH_WEST:
+                deltaB = Math.abs(roundyA.getRowIndex() - roundyB.getRowIndex());
+                deltaC = Math.abs(roundyA.getRowIndex() - roundyC.getRowIndex());
+                break;
+            case EAST:
+            case WEST:
+                deltaB = Math.abs(roundyA.getColumnIndex() - roundyB.getColumnIndex());
+                deltaC = Math.abs(roundyA.getColumnIndex() - roundyC.getColumnIndex());
+                break;
+        }
+
+        // decide closest roundy based on deltas from roundyA
+        if (deltaB == deltaC) {
+            // break tie with roundy'id
+            if (roundyB.getId() < roundyC.getId()) {
+                closest = roundyB;
+            } else {
+                closest = roundyC;
+            }
+        } else if (deltaB < deltaC) {
+            closest = roundyB;
+        } else {
+            closest = roundyC;
+        }
+
+        return closest;
+    }
+
+    /**
+     * @return number of cells between two roundies on the same row, column or diagonal
+     */
+    protected static int getDistance(Roundy roundyA, Roundy roundyB) {
+        return Math.max(Math.abs(roundyA.getRowIndex() - roundyB.getRowIndex()),
+                Math.abs(roundyA.getColumnIndex() - roundyB.getColumnIndex()));
+    }
+
+    /**
+     * Find every couple of roundies which can collide and save, in each roundy, the closest one
+     * and the number of roundies it can hit in every direction.
+     *
+     * @param roundies roundies in the grid, null entries are skipped
+     * @param listener notified once for each couple of roundies which can hit each other directly,
+     *                 see {@link #notifyCollisions(Roundy[], CollisionListener)}
+     */
+    public void markCollisions(Roundy[] roundies, CollisionListener listener) {
+        for (int i = 0; i < roundies.length; i++) {
+            Roundy roundyA = roundies[i];
+            if (roundyA == null) {
+                continue;
+            }
+
+            for (int j = i + 1; j < roundies.length; j++) {
+                Roundy roundyB = roundies[j];
+                if (roundyB == null) {
+                    continue;
+                }
+
+                for (Direction direction : DIRECTIONS) {
+                    if (collides(roundyA, roundyB, direction)) {
+                        int distance = getDistance(roundyA, roundyB);
+                        roundyA.addCollision(roundyB.getId(), direction, distance);
+                        roundyB.addCollision(roundyA.getId(), direction.getOpposite(), distance); //save extra check
+                        break;
+                    }
+                }
+            }
+        }
+        notifyCollisions(roundies, listener);
+    }
+
+    /**
+     * Notify each roundy together with the closest roundies it can hit towards
+     * {@link #LINE_DIRECTIONS}: every couple of neighbours on a row, column or diagonal is notified
+     * exactly once, and every roundy which can collide is notified at least once.
+     *
+     * @param roundies roundies in the grid, null entries are skipped
+     * @param listener listener to notify
+     */
+    protected void notifyCollisions(Roundy[] roundies, CollisionListener listener) {
+        for (Roundy roundyA : roundies) {
+            if (roundyA == null || !roundyA.hasCollisions()) {
+                continue;
+            }
+            for (Direction direction : LINE_DIRECTIONS) {
+                Roundy roundyB = findClosest(roundyA, roundies, direction);
+                if (roundyB != null) {
+                    listener.onCollisionFound(roundyA, roundyB);
+                }
+            }
+        }
+    }
+
+    /**
+     * Index the cells occupied by the roundies without looking for collisions, for when the
+     * collisions saved in the roundies are already up to date, e.g. restored from a snapshot.
+     * Detectors which keep no index of their own do nothing.
+     *
+     * @param roundies roundies in the grid
+     */
+    public void indexRoundies(Roundy[] roundies) {
+    }
+
+    /**
+     * Mark the collisions of a roundy which just entered the grid (or stopped in a new cell),
+     * without recomputing the ones among the other roundies: only the roundies on the lines
+     * crossing its cell are updated.
+     *
+     * @param roundyA  roundy entering the grid
+     * @param roundies roundies in the grid, indexed by id
+     * @param listener notified for each roundy which can now hit roundyA directly, and for
+     *                 roundyA itself when it cannot hit anybody
+     */
+    public void addRoundy(Roundy roundyA, Roundy[] roundies, CollisionListener listener) {
+        for (Direction direction : LINE_DIRECTIONS) {
+            Direction opposite = direction.getOpposite();
+            Roundy ahead = lookUpClosest(roundyA, roundies, direction);
+            Roundy behind = lookUpClosest(roundyA, roundies, opposite);
+            if (ahead != null) {
+                linkClosest(roundyA, ahead, roundies, direction, listener);
+            }
+            if (behind != null) {
+                linkClosest(roundyA, behind, roundies, opposite, listener);
+            }
+        }
+        if (!roundyA.hasCollisions()) {
+            listener.onNoMoreCollisions(roundyA);
+        }
+    }
+
+    /**
+     * roundyA just entered the grid and closest is the first roundy it would hit along the
+     * direction: every roundy from closest onwards can now hit one more roundy.
+     */
+    private void linkClosest(Roundy roundyA, Roundy closest, Roundy[] roundies, Direction direction,
+                             CollisionListener listener) {
+        Direction opposite = direction.getOpposite();
+        int distance = getDistance(roundyA, closest);
+
+        roundyA.setCollisions(direction, closest.getId(), distance, closest.getCollisionCount(direction) + 1);
+        closest.setCollisions(opposite, roundyA.getId(), distance, closest.getCollisionCount(opposite) + 1);
+        for (Roundy next = findClosest(closest, roundies, direction); next != null;
+             next = findClosest(next, roundies, direction)) {
+            addCollisionCount(next, opposite, 1);
+        }
+        listener.onCollisionFound(roundyA, closest);
+    }
+
+    /**
+     * Remove the collisions of a roundy which left its cell, either because it started moving or
+     * because it fell off the grid. Only the roundies on the lines crossing its cell are updated.
+     * Removing a roundy which has already been removed does nothing.
+     *
+     * @param roundyA  roundy leaving its cell
+     * @param roundies roundies in the grid, indexed by id
+     * @param listener notified for each roundy that cannot collide with anybody anymore
+     */
+    public void removeRoundy(Roundy roundyA, Roundy[] roundies, CollisionListener listener) {
+        for (Direction direction : LINE_DIRECTIONS) {
+            Direction opposite = direction.getOpposite();
+            Roundy ahead = findClosest(roundyA, roundies, direction);
+            Roundy behind = findClosest(roundyA, roundies, opposite);
+            if (ahead != null) {
+                unlinkClosest(roundyA, ahead, behind, roundies, direction, listener);
+            }
+            if (behind != null) {
+                unlinkClosest(roundyA, behind, ahead, roundies, opposite, listener);
+            }
+        }
+        roundyA.resetCollisions();
+    }
+
+    /**
+     * roundyA is leaving the grid and closest was the first roundy it would hit along the
+     * direction: every roundy from closest onwards can hit one roundy less, and closest now faces
+     * the roundy on the other side of roundyA, if any.
+     */
+    private void unlinkClosest(Roundy roundyA, Roundy closest, Roundy other, Roundy[] roundies,
+                               Direction direction, CollisionListener listener) {
+        Direction opposite = direction.getOpposite();
+        int count = closest.getCollisionCount(opposite) - 1;
+
+        if (other == null) {
+            closest.setCollisions(opposite, Roundy.NO_ROUNDY, 0, count);
+        } else {
+            int distance = roundyA.getClosestDistance(direction) + roundyA.getClosestDistance(opposite);
+            closest.setCollisions(opposite, other.getId(), distance, count);
+        }
+        for (Roundy next = findClosest(closest, roundies, direction); next != null;
+             next = findClosest(next, roundies, direction)) {
+            addCollisionCount(next, opposite, -1);
+        }
+        if (!closest.hasCollisions()) {
+            listener.onNoMoreCollisions(closest);
+        }
+    }
+
+    private static void addCollisionCount(Roundy roundy, Direction direction, int delta) {
+        roundy.setCollisions(direction, roundy.getClosestId(direction),
+                roundy.getClosestDistance(direction), roundy.getCollisionCount(direction) + delta);
+    }
+}
@@ -0,0 +1,16 @@
+package selantoapps.roundyinflatworld.controller;
+
+import selantoapps.roundyinflatworld.model.Roundy;
+
+public interface CollisionListener {
+    /**
+     * Called when roundyA and roundyB can hit each other directly, with nobody in between.
+     */
+    void onCollisionFound(Roundy roundyA, Roundy roundyB);
+
+    /**
+     * Called when, after another roundy left the grid or moved away, roundy cannot collide with
+     * anybody anymore.
+     */
+    void onNoMoreCollisions(Roundy roundy);
+}
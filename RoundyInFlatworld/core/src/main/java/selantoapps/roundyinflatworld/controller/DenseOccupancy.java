@@ -0,0 +1,95 @@
+package selantoapps.roundyinflatworld.controller;
+
+import selantoapps.roundyinflatworld.utils.RandomSource;
+
+/**
+ * An {@link Occupancy} with a slot for every cell: the free cells are packed in the first
+ * freeCellCount slots, and each free cell knows its slot in there, NOT_FREE for the occupied ones,
+ * so a free cell is sampled, taken or released in O(1).
+ */
+final class DenseOccupancy extends Occupancy {
+
+    private static final int NOT_FREE = -1;
+
+    private final int[] freeCells;
+    private final int[] freeCellSlots;
+    private int freeCellCount;
+
+    DenseOccupancy(int cellCount) {
+        super(cellCount);
+        freeCells = new int[cellCount];
+        freeCellSlots = new int[cellCount];
+    }
+
+    @Override
+    void clear() {
+        for (int cellIndex = 0; cellIndex < cellCount; cellIndex++) {
+            freeCells[cellIndex] = cellIndex;
+            freeCellSlots[cellIndex] = cellIndex;
+        }
+        freeCellCount = cellCount;
+    }
+
+    @Override
+    boolean isOccupied(int cellIndex) {
+        return freeCellSlots[cellIndex] == NOT_FREE;
+    }
+
+    /**
+     * The last free cell takes the slot of the cell occupied.
+     */
+    @Override
+    void occupy(int cellIndex) {
+        int slot = freeCellSlots[cellIndex];
+        int lastFreeCell = freeCells[--freeCellCount];
+        freeCells[slot] = lastFreeCell;
+        freeCellSlots[lastFreeCell] = slot;
+        freeCellSlots[cellIndex] = NOT_FREE;
+    }
+
+    @Override
+    void free(int cellIndex) {
+        freeCells[freeCellCount] = cellIndex;
+        freeCellSlots[cellIndex] = freeCellCount++;
+    }
+
+    @Override
+    int getFreeCellCount() {
+        return freeCellCount;
+    }
+
+    @Override
+    int pickFreeCell(RandomSource random) {
+        return freeCells[random.nextInt(freeCellCount)];
+    }
+
+    @Override
+    boolean isOrdered() {
+        return true;
+    }
+
+    @Override
+    int getFreeCell(int slot) {
+        return freeCells[slot];
+    }
+
+    @Override
+    void setFreeCells(int[] cells) {
+        if (cells.length != freeCellCount) {
+            throw new IllegalArgumentException(cells.length + " free cells instead of " + freeCellCount);
+        }
+        for (int slot = 0; slot < cells.length; slot++) {
+            int cellIndex = cells[slot];
+            if (cellIndex < 0 || cellIndex >= cellCount || isOccupied(cellIndex)) {
+                throw new IllegalArgumentException("Cell " + cellIndex + " is not free");
+            }
+            freeCells[slot] = cellIndex;
+            freeCellSlots[cellIndex] = slot;
+        }
+        for (int slot = 0; slot < cells.length; slot++) {
+            if (freeCellSlots[cells[slot]] != slot) {
+                throw new IllegalArgumentException("Cell " + cells[slot] + " is free more than once");
+            }
+        }
+    }
+}
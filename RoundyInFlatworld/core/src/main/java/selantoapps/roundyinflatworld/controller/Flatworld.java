@@ -0,0 +1,766 @@
+package selantoapps.roundyinflatworld.controller;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import selantoapps.roundyinflatworld.model.BoardKey;
+import selantoapps.roundyinflatworld.model.Chain;
+import selantoapps.roundyinflatworld.model.Roundy;
+import selantoapps.roundyinflatworld.model.RoundyStore;
+import selantoapps.roundyinflatworld.model.StandaloneRoundy;
+import selantoapps.roundyinflatworld.settings.Direction;
+import selantoapps.roundyinflatworld.utils.EventTracer;
+import selantoapps.roundyinflatworld.utils.LatencyHistogram;
+import selantoapps.roundyinflatworld.utils.MetricsRegistry;
+import selantoapps.roundyinflatworld.utils.RandomSource;
+import selantoapps.roundyinflatworld.utils.Zobrist;
+
+/**
+ * This class holds the rules of the game, without any dependency on how the game is shown.
+ * <p>
+ * It places the roundies in the grid, uses a {@link CollisionDetector} to find possible collisions
+ * among them, and resolves synchronously a click on a roundy into the whole {@link Chain} of moves
+ * it causes, up to the roundy that falls off the world.
+ */
+public class Flatworld {
+
+    private final int gridSize;
+    private final CollisionDetector collisionDetector;
+    private final int cellCount;
+    private final int roundyCount;
+    private final RandomSource random;
+    private final Occupancy occupancy;
+
+    // Zobrist hashes of the occupied cells and of the roundy in each of them
+    private long occupancyHash;
+    private long hash;
+    // built on demand, until the board changes
+    private BoardKey boardKey;
+    private final Roundy[] roundies;
+    private HappinessListener happinessListener;
+    private BoardListener boardListener;
+    private final EventTracer tracer = new EventTracer();
+    private ReplayLog replayLog;
+
+    // metrics, all null unless a registry is set
+    private LatencyHistogram findUnhappyRoundiesLatency;
+    private LatencyHistogram markCollisionsLatency;
+    private LatencyHistogram clickLatency;
+    private LatencyHistogram chainLengths;
+    private AtomicLong collisionsFound;
+    private AtomicLong deaths;
+
+    private static final int DIED = -1;
+
+    /**
+     * The largest grid whose cells can all be indexed by an int.
+     */
+    public static final int MAX_GRID_SIZE = 46340;
+
+    // above 1024x1024, an index of the cells takes more than 4 MB whatever the roundies
+    private static final int MAX_INDEXED_GRID_SIZE = 1024;
+
+    private int counter; //only used for testing
+
+    // when true, game events only update the collisions of the roundies they touch
+    private boolean incrementalCollisions = true;
+    private boolean collisionsMarked;
+
+    // scratch buffers used while a chain is resolved
+    private final int[] chainIds;
+    private final int[] chainCells;
+
+    // when true, the same Chain is returned by every click and roundies are recycled by id
+    private boolean allocationFree;
+    private final Chain reusedChain;
+    private final Roundy[] recycledRoundies;
+
+    // where the roundies are kept when compact, null to create a StandaloneRoundy for each one
+    private RoundyStore roundyStore;
+
+    private final CollisionListener collisionListener = new CollisionListener() {
+        @Override
+        public void onCollisionFound(Roundy roundyA, Roundy roundyB) {
+            if (tracer.isEnabled(EventTracer.VERBOSE)) {
+                tracer.record(EventTracer.COLLISION_FOUND, roundyA.getId(), roundyB.getId(), 0);
+            }
+            if (collisionsFound != null) {
+                collisionsFound.incrementAndGet();
+            }
+            setUnHappy(roundyA, roundyB);
+        }
+
+        @Override
+        public void onNoMoreCollisions(Roundy roundy) {
+            setHappy(roundy);
+        }
+    };
+
+    /**
+     * @throws IllegalArgumentException if the grid is larger than {@link #MAX_GRID_SIZE}
+     */
+    public Flatworld(CollisionDetector collisionDetector, int gridSize, int roundyCount, RandomSource random) {
+        if (gridSize > MAX_GRID_SIZE) {
+            throw new IllegalArgumentException("Grid of " + gridSize + "x" + gridSize
+                    + " larger than " + MAX_GRID_SIZE + "x" + MAX_GRID_SIZE);
+        }
+        this.collisionDetector = collisionDetector;
+        this.gridSize = gridSize;
+        this.cellCount = gridSize * gridSize;
+        this.roundyCount = roundyCount;
+        this.random = random;
+        chainIds = new int[roundyCount];
+        chainCells = new int[roundyCount];
+        reusedChain = new Chain(roundyCount);
+        recycledRoundies = new Roundy[roundyCount];
+        occupancy = Occupancy.create(cellCount, roundyCount);
+        roundies = new Roundy[roundyCount];
+    }
+
+    public Flatworld(int gridSize, int roundyCount, RandomSource random) {
+        this(createCollisionDetector(gridSize), gridSize, roundyCount, random);
+    }
+
+    /**
+     * The default Flatworld fits in a 64-bit word, so it can use the {@link BitboardCollisionDetector},
+     * other grids fall back to the {@link LineIndexCollisionDetector}, up to the ones too large to
+     * index by cell, which use the {@link SparseCollisionDetector}.
+     *
+     * @param gridSize size of the side of the grid
+     * @return the fastest collision detector available for the grid size
+     */
+    public static CollisionDetector createCollisionDetector(int gridSize) {
+        if (gridSize == BitboardCollisionDetector.GRID_SIZE) {
+            return new BitboardCollisionDetector();
+        }
+        if (gridSize > MAX_INDEXED_GRID_SIZE) {
+            return new SparseCollisionDetector(gridSize);
+        }
+        return new LineIndexCollisionDetector(gridSize);
+    }
+
+    /**
+     * @param incrementalCollisions true to update, on each move, death or new roundy, only the
+     *                              collisions along the lines it left or entered; false to
+     *                              recompute all the collisions after each death
+     */
+    public void setIncrementalCollisions(boolean incrementalCollisions) {
+        this.incrementalCollisions = incrementalCollisions;
+    }
+
+    /**
+     * In allocation-free mode a click, with the chain and the death it causes, does not allocate
+     * anything: each click returns the same {@link Chain}, overwritten by the next click, and the
+     * {@link Roundy} of a dead or removed roundy is reused when a roundy with the same id is placed
+     * again. It suits callers which are done with a chain before the next click, as the app
+     * is.
+     *
+     * @param allocationFree true to reuse chains and roundies
+     */
+    public void setAllocationFree(boolean allocationFree) {
+        this.allocationFree = allocationFree;
+    }
+
+    /**
+     * Compact roundies keep their information in a {@link RoundyStore} rather than in an object of
+     * their own each, which takes about half the memory and lets a world hold millions of them.
+     * Like in allocation-free mode, the {@link Roundy} of a dead or removed roundy is reused when a
+     * roundy with the same id is placed again. Called before {@link #init()}.
+     *
+     * @param compactRoundies true to keep the roundies in a store
+     */
+    public void setCompactRoundies(boolean compactRoundies) {
+        roundyStore = compactRoundies ? new RoundyStore(roundyCount) : null;
+    }
+
+    public boolean isCompactRoundies() {
+        return roundyStore != null;
+    }
+
+    public void setHappinessListener(HappinessListener happinessListener) {
+        this.happinessListener = happinessListener;
+    }
+
+    public void setBoardListener(BoardListener boardListener) {
+        this.boardListener = boardListener;
+    }
+
+    /**
+     * @param metrics registry where the latencies and the counters of this world are recorded,
+     *                null to stop recording them
+     */
+    public void setMetricsRegistry(MetricsRegistry metrics) {
+        if (metrics == null) {
+            findUnhappyRoundiesLatency = null;
+            markCollisionsLatency = null;
+            clickLatency = null;
+            chainLengths = null;
+            collisionsFound = null;
+            deaths = null;
+        } else {
+            findUnhappyRoundiesLatency = metrics.histogram(MetricsRegistry.FIND_UNHAPPY_ROUNDIES);
+            markCollisionsLatency = metrics.histogram(MetricsRegistry.MARK_COLLISIONS);
+            clickLatency = metrics.histogram(MetricsRegistry.CLICK);
+            chainLengths = metrics.histogram(MetricsRegistry.CHAIN_LENGTH);
+            collisionsFound = metrics.counter(MetricsRegistry.COLLISIONS_FOUND);
+            deaths = metrics.counter(MetricsRegistry.DEATHS);
+        }
+    }
+
+    /**
+     * @param replayLog log where the games are recorded from the next {@link #init()}, null to
+     *                  stop recording them
+     */
+    public void setReplayLog(ReplayLog replayLog) {
+        this.replayLog = replayLog;
+    }
+
+    public ReplayLog getReplayLog() {
+        return replayLog;
+    }
+
+    public boolean isIncrementalCollisions() {
+        return incrementalCollisions;
+    }
+
+    /**
+     * @return the tracer of the events of this world, disabled until its level is set
+     */
+    public EventTracer getTracer() {
+        return tracer;
+    }
+
+    /**
+     * Empty the grid.
+     */
+    public void init() {
+        counter = -1;
+        collisionsMarked = false;
+        occupancy.clear();
+        Arrays.fill(roundies, null);
+        occupancyHash = 0;
+        hash = 0;
+        boardKey = null;
+        if (replayLog != null) {
+            replayLog.recordInit(this, incrementalCollisions);
+        }
+        if (boardListener != null) {
+            boardListener.onBoardChanged();
+        }
+    }
+
+    public RandomSource getRandomSource() {
+        return random;
+    }
+
+    public int getGridSize() {
+        return gridSize;
+    }
+
+    public int getRoundyCount() {
+        return roundyCount;
+    }
+
+    /**
+     * @return roundies in the grid indexed by id, null for the ones not placed yet or dead
+     */
+    public Roundy[] getRoundies() {
+        return roundies;
+    }
+
+    public Roundy getRoundy(int id) {
+        return roundies[id];
+    }
+
+    /**
+     * @return Zobrist hash of the roundies in the grid, each one in its cell, kept up to date at
+     * each change of the board
+     * @see BoardKey#of(int[])
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * @return Zobrist hash of the occupied cells, whatever the roundies occupying them
+     * @see BoardKey#occupancyOf(int[])
+     */
+    public long getOccupancyHash() {
+        return occupancyHash;
+    }
+
+    /**
+     * The key keeps only the occupied cells, like the occupancy of a {@link #isSparse() sparse}
+     * board, so that its memory grows with the roundies on the large grids too.
+     *
+     * @return the key of the board as it is now, built once until the board changes, whose hash is
+     * {@link #getHash()}
+     */
+    public BoardKey getBoardKey() {
+        if (boardKey == null) {
+            int[] cellsById = new int[roundyCount];
+            for (int id = 0; id < roundyCount; id++) {
+                cellsById[id] = roundies[id] == null ? DIED : roundies[id].getCellIndex();
+            }
+            boardKey = BoardKey.of(cellsById);
+        }
+        return boardKey;
+    }
+
+    public boolean isOccupied(int cellIndex) {
+        return occupancy.isOccupied(cellIndex);
+    }
+
+    public int getFreeCellCount() {
+        return occupancy.getFreeCellCount();
+    }
+
+    /**
+     * Large grids with few roundies keep only their occupied cells, so that their memory grows with
+     * the roundies rather than with the cells: their free cells are picked at random among all the
+     * cells until a free one comes out, and have no order.
+     *
+     * @return true if only the occupied cells are kept, in which case
+     * {@link #getFreeCell(int)} and {@link #setFreeCells(int[])} are not supported
+     */
+    public boolean isSparse() {
+        return !occupancy.isOrdered();
+    }
+
+    /**
+     * @param slot from 0 to {@link #getFreeCellCount()} excluded
+     * @return the free cell in the slot, the one picked when the random source returns the slot
+     * @throws UnsupportedOperationException if the world {@link #isSparse()}
+     */
+    public int getFreeCell(int slot) {
+        return occupancy.getFreeCell(slot);
+    }
+
+    /**
+     * Put the free cells in the specified order, so that the next random cells picked are the same
+     * as the ones picked by the world where the order was taken from.
+     *
+     * @param cells all the free cells, each one once
+     * @throws IllegalArgumentException      if the cells are not the free ones
+     * @throws UnsupportedOperationException if the world {@link #isSparse()}
+     */
+    public void setFreeCells(int[] cells) {
+        occupancy.setFreeCells(cells);
+    }
+
+    /**
+     * Place a roundy in a random free cell, without looking for collisions yet.
+     *
+     * @param id identifier of the new roundy
+     * @return the roundy placed
+     */
+    public Roundy placeRoundy(int id) {
+        return placeRoundy(id, pickAFreeCell());
+    }
+
+    /**
+     * Place a roundy in the specified cell, without looking for collisions yet.
+     *
+     * @param id        identifier of the new roundy
+     * @param cellIndex a free cell
+     * @return the roundy placed
+     */
+    public Roundy placeRoundy(int id, int cellIndex) {
+        if (replayLog != null) {
+            replayLog.recordPlace(id, cellIndex);
+        }
+        return putRoundy(id, cellIndex);
+    }
+
+    private Roundy putRoundy(int id, int cellIndex) {
+        occupyCell(cellIndex);
+        Roundy roundy = roundyStore == null ? recycledRoundies[id] : roundyStore.getRoundy(id);
+        if (roundy == null) {
+            roundy = new StandaloneRoundy(id, cellIndex, getRowIndexForCellIndex(cellIndex),
+                    getColumnIndexForCellIndex(cellIndex));
+            if (allocationFree) {
+                recycledRoundies[id] = roundy;
+            }
+        } else {
+            roundy.setCellIndex(cellIndex);
+            roundy.setRowIndex(getRowIndexForCellIndex(cellIndex));
+            roundy.setColumnIndex(getColumnIndexForCellIndex(cellIndex));
+            roundy.setHappy(false);
+            roundy.resetCollisions();
+        }
+        roundies[id] = roundy;
+        hashRoundy(id, cellIndex);
+        if (boardListener != null) {
+            boardListener.onCellChanged(cellIndex);
+        }
+        return roundy;
+    }
+
+    /**
+     * Place a roundy in a random free cell and find all the unhappy roundies.
+     *
+     * @param id identifier of the new roundy
+     * @return the roundy placed
+     */
+    public Roundy addRoundy(int id) {
+        return addRoundy(id, pickAFreeCell());
+    }
+
+    /**
+     * Place a roundy in the specified cell and find all the unhappy roundies.
+     *
+     * @param id        identifier of the new roundy
+     * @param cellIndex a free cell
+     * @return the roundy placed
+     */
+    public Roundy addRoundy(int id, int cellIndex) {
+        if (replayLog != null) {
+            replayLog.recordAdd(id, cellIndex);
+        }
+        Roundy roundy = putRoundy(id, cellIndex);
+        if (incrementalCollisions && collisionsMarked) {
+            collisionDetector.addRoundy(roundy, roundies, collisionListener);
+        } else {
+            markAllCollisions();
+        }
+        return roundy;
+    }
+
+    private int pickAFreeCell() {
+
+//        Handy cellIndexes when testing specified scenarios in a grid of 8x8
+//        counter++;
+//        int p[] = {
+//                24, 32, //N-S
+//                27, 28, //W-E
+//                29, 36, // below /
+//                20, 27, // above /
+//                28, 35, // on /
+//                27, 36, // on \
+//                20, 29, // above \
+//                35, 44, // below \
+//                34, 36, 38, 39, // test multiple horizontal crashes
+//                36, 20, 12, 52, // test multiple vertical crashes
+//                34, 27, 48, 6, // test multiple diagonal / crashes
+//                17, 26, 44, 53, // test multiple diagonal \ crashes
+//                1};
+//        return p[counter];
+
+        return occupancy.pickFreeCell(random);
+    }
+
+    private void occupyCell(int cellIndex) {
+        occupancy.occupy(cellIndex);
+        occupancyHash ^= Zobrist.cell(cellIndex);
+        boardKey = null;
+    }
+
+    private void freeCell(int cellIndex) {
+        occupancy.free(cellIndex);
+        occupancyHash ^= Zobrist.cell(cellIndex);
+        boardKey = null;
+    }
+
+    /**
+     * Xor the roundy in or out of the hash of the board.
+     */
+    private void hashRoundy(int id, int cellIndex) {
+        hash ^= Zobrist.roundy(id, cellIndex);
+        boardKey = null;
+    }
+
+    private int getColumnIndexForCellIndex(int cellIndex) {
+        return cellIndex % gridSize;
+    }
+
+    private int getRowIndexForCellIndex(int cellIndex) {
+        if (cellIndex < gridSize) {
+            return 0;
+        } else {
+            return cellIndex / gridSize;
+        }
+    }
+
+    /**
+     * According to the game design, roundies are unhappy if they can collides with other roundies
+     * in the possible {@link Direction} of the game.
+     * Roundies can move only horizontally, vertically, and diagonally.
+     */
+    public void findUnhappyRoundies() {
+        if (replayLog != null) {
+            replayLog.recordFindUnhappyRoundies();
+        }
+        markAllCollisions();
+    }
+
+    private void markAllCollisions() {
+        long start = findUnhappyRoundiesLatency == null ? 0 : System.nanoTime();
+
+        // reset before calculating new collisions
+        for (Roundy roundy : roundies) {
+            if (roundy != null) {
+                roundy.resetCollisions();
+            }
+        }
+
+        if (tracer.isEnabled(EventTracer.EVENTS)) {
+            tracer.record(EventTracer.RECOMPUTE_BEGIN, countRoundiesInGrid(), 0, 0);
+        }
+
+        // find and save potential collisions
+        long markStart = markCollisionsLatency == null ? 0 : System.nanoTime();
+        collisionDetector.markCollisions(roundies, collisionListener);
+        collisionsMarked = true;
+        if (markCollisionsLatency != null) {
+            markCollisionsLatency.recordSince(markStart);
+        }
+        if (incrementalCollisions) {
+            // no death will set the survivors happy again, as it does on a full recompute: from
+            // now on only the roundies whose collisions change are updated
+            for (Roundy roundy : roundies) {
+                if (roundy != null && !roundy.hasCollisions()) {
+                    setHappy(roundy);
+                }
+            }
+        }
+        if (boardListener != null) {
+            boardListener.onBoardChanged();
+        }
+
+        if (tracer.isEnabled(EventTracer.EVENTS)) {
+            tracer.record(EventTracer.RECOMPUTE_END, countRoundiesInGrid(), 0, 0);
+        }
+        if (findUnhappyRoundiesLatency != null) {
+            findUnhappyRoundiesLatency.recordSince(start);
+        }
+    }
+
+    /**
+     * Take the collisions already saved in the roundies as the current ones, instead of looking
+     * for them again with {@link #findUnhappyRoundies()}.
+     */
+    public void restoreCollisions() {
+        collisionDetector.indexRoundies(roundies);
+        collisionsMarked = true;
+        if (boardListener != null) {
+            boardListener.onBoardChanged();
+        }
+    }
+
+    /**
+     * A roundy can move in one of the {@link Direction} on which he can collides with somebody
+     * else. This somebody else is chosen casually.
+     * Note: when there are more then one possible collision on the same direction then it is chosen
+     * the closest one.
+     * We don't want roundies to jump over other roundies :)
+     *
+     * @param id of the roundy clicked
+     * @return the chain of moves caused by the click, null if the roundy cannot collide with
+     * anybody
+     */
+    public Chain click(int id) {
+        Roundy roundyA = roundies[id];
+        if (roundyA == null || !roundyA.hasCollisions()) {
+            return null;
+        }
+
+        // Take one at random, each roundy that can be hit having the same chance
+        int randomCollision = random.nextInt(roundyA.getCollisionCount());
+        return click(id, roundyA.getCollisionDirection(randomCollision));
+    }
+
+    /**
+     * Move a roundy towards the specified direction, as {@link #click(int)} does once it has chosen
+     * the direction at random.
+     *
+     * @param id        of the roundy clicked
+     * @param direction direction of the movement
+     * @return the chain of moves caused by the click, null if the roundy cannot collide with
+     * anybody in that direction
+     */
+    public Chain click(int id, Direction direction) {
+        Roundy roundyA = roundies[id];
+        if (roundyA == null || !roundyA.hasCollisionTowards(direction)) {
+            return null;
+        }
+        long start = clickLatency == null ? 0 : System.nanoTime();
+
+        if (tracer.isEnabled(EventTracer.EVENTS)) {
+            tracer.record(EventTracer.MOVE, id, direction.ordinal(), roundyA.getCellIndex());
+        }
+
+        // take the closest one in that direction to avoid to jump over roundies
+        Roundy roundyB = collisionDetector.findClosest(roundyA, roundies, direction);
+
+        // the clicked roundy leaves its cell, each other roundy of the chain is replaced in its
+        // cell by the previous one
+        freeCell(roundyA.getCellIndex());
+
+        int length = 0;
+        chainIds[length] = roundyA.getId();
+        chainCells[length++] = roundyA.getCellIndex();
+        while (roundyB != null) {
+            chainIds[length] = roundyB.getId();
+            chainCells[length++] = roundyB.getCellIndex();
+            Roundy closest = transferMovement(roundyA, roundyB, direction);
+            roundyA = roundyB;
+            roundyB = closest;
+        }
+
+        // nobody to hit, it will fall of the world
+        die(roundyA);
+
+        if (clickLatency != null) {
+            clickLatency.recordSince(start);
+            chainLengths.record(length);
+            deaths.incrementAndGet();
+        }
+
+        Chain chain;
+        if (allocationFree) {
+            reusedChain.set(direction, chainIds, chainCells, length);
+            chain = reusedChain;
+        } else {
+            chain = new Chain(direction, Arrays.copyOf(chainIds, length), Arrays.copyOf(chainCells, length));
+        }
+        if (replayLog != null) {
+            replayLog.recordClick(id, chain);
+        }
+        if (boardListener != null) {
+            // all on the line of the chain
+            for (int i = 0; i < length; i++) {
+                boardListener.onCellChanged(chainCells[i]);
+            }
+        }
+        return chain;
+    }
+
+    /**
+     * Dry run of {@link #click(int, Direction)}: the chain of moves the click would cause, without
+     * moving anybody.
+     *
+     * @param id        of the roundy to click
+     * @param direction direction of the movement
+     * @return a new chain, null if the roundy cannot collide with anybody in that direction
+     */
+    public Chain predictClick(int id, Direction direction) {
+        Roundy roundy = roundies[id];
+        if (roundy == null || !roundy.hasCollisionTowards(direction)) {
+            return null;
+        }
+        // each roundy of the chain hits the closest one from the cell where it is now
+        int length = 0;
+        while (roundy != null) {
+            chainIds[length] = roundy.getId();
+            chainCells[length++] = roundy.getCellIndex();
+            roundy = collisionDetector.findClosest(roundy, roundies, direction);
+        }
+        return new Chain(direction, Arrays.copyOf(chainIds, length), Arrays.copyOf(chainCells, length));
+    }
+
+    /**
+     * Like {@link #predictClick(int, Direction)}, without allocating the chain.
+     *
+     * @return id of the roundy which would fall off the world, {@link Roundy#NO_ROUNDY} if the
+     * roundy cannot collide with anybody in that direction
+     */
+    public int predictDeath(int id, Direction direction) {
+        Roundy roundy = roundies[id];
+        if (roundy == null || !roundy.hasCollisionTowards(direction)) {
+            return Roundy.NO_ROUNDY;
+        }
+        Roundy next = collisionDetector.findClosest(roundy, roundies, direction);
+        while (next != null) {
+            roundy = next;
+            next = collisionDetector.findClosest(roundy, roundies, direction);
+        }
+        return roundy.getId();
+    }
+
+    /**
+     * When a roundy hits another roundy, then the last one starts move in the same direction and
+     * the first one stop in the cell of the collision.
+     *
+     * @param roundyA   the roundy which hits roundyB
+     * @param roundyB   the roundy which get the impulse to move
+     * @param direction direction of the movement
+     * @return the closest roundy that roundyB will hit, null if none
+     */
+    private Roundy transferMovement(Roundy roundyA, Roundy roundyB, Direction direction) {
+        if (tracer.isEnabled(EventTracer.EVENTS)) {
+            tracer.record(EventTracer.TRANSFER, roundyA.getId(), roundyB.getId(), roundyB.getCellIndex());
+        }
+
+        // roundyB gets the impulse from the cell where it is now, before collisions change
+        Roundy closest = collisionDetector.findClosest(roundyB, roundies, direction);
+
+        if (incrementalCollisions) {
+            // roundyB is on the move and roundyA left its cell
+            collisionDetector.removeRoundy(roundyB, roundies, collisionListener);
+            collisionDetector.removeRoundy(roundyA, roundies, collisionListener);
+        }
+
+        hashRoundy(roundyA.getId(), roundyA.getCellIndex());
+        hashRoundy(roundyA.getId(), roundyB.getCellIndex());
+        roundyA.setCellIndex(roundyB.getCellIndex());
+        roundyA.setRowIndex(roundyB.getRowIndex());
+        roundyA.setColumnIndex(roundyB.getColumnIndex());
+
+        if (incrementalCollisions) {
+            // roundyA stopped in the cell of roundyB
+            setHappy(roundyA);
+            collisionDetector.addRoundy(roundyA, roundies, collisionListener);
+        }
+        return closest;
+    }
+
+    private void die(Roundy roundy) {
+        if (tracer.isEnabled(EventTracer.EVENTS)) {
+            tracer.record(EventTracer.DEATH, roundy.getId(), roundy.getCellIndex(), 0);
+        }
+
+        // the cell of roundy is not freed: the previous roundy of the chain stopped there
+        roundies[roundy.getId()] = null;
+        hashRoundy(roundy.getId(), roundy.getCellIndex());
+        roundy.setCellIndex(DIED);
+
+        // in incremental mode the collisions of roundy were removed when it started moving
+        if (!incrementalCollisions) {
+            for (Roundy r : roundies) {
+                if (r != null) {
+                    setHappy(r);
+                }
+            }
+            markAllCollisions();
+        }
+    }
+
+    private int countRoundiesInGrid() {
+        int count = 0;
+        for (Roundy roundy : roundies) {
+            if (roundy != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void setUnHappy(Roundy roundy) {
+        roundy.setHappy(false);
+        if (happinessListener != null) {
+            happinessListener.onUnHappy(roundy);
+        }
+    }
+
+    private void setHappy(Roundy roundy) {
+        roundy.setHappy(true);
+        if (happinessListener != null) {
+            happinessListener.onHappy(roundy);
+        }
+    }
+
+    private void setUnHappy(Roundy roundyA, Roundy roundyB) {
+        setUnHappy(roundyA);
+        setUnHappy(roundyB);
+    }
+}
@@ -0,0 +1,309 @@
+package selantoapps.roundyinflatworld.controller;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+import selantoapps.roundyinflatworld.model.Roundy;
+import selantoapps.roundyinflatworld.settings.Direction;
+import selantoapps.roundyinflatworld.utils.RandomSource;
+import selantoapps.roundyinflatworld.utils.SeedableRandomSource;
+
+/**
+ * Saves the state of a {@link Flatworld} in a compact binary form and restores it, without placing
+ * the roundies at random again nor looking for their collisions again.
+ * <p>
+ * The collisions restored are only checked to point to a roundy on their line, unless restored in
+ * validation mode, which looks for the collisions again and rejects a snapshot whose collisions
+ * are not the ones found: snapshots which come from outside the process should be validated.
+ * <p>
+ * Layout, big-endian:
+ * <pre>
+ * int   magic "RIFW"
+ * short version
+ * byte  flags: {@link #HAS_RANDOM_STATE}, {@link #HAS_COLLISIONS}, {@link #SPARSE}
+ * int   flags of the caller, e.g. the new roundy of the app still to be added
+ * int   grid size
+ * int   number of roundies
+ * long  state of the random source, if HAS_RANDOM_STATE
+ * int   cell of each roundy by id, -1 when not in the grid
+ * int   free cells, in the order they are picked at random, as many as the cells not occupied,
+ *       unless SPARSE: a sparse world keeps no order of its free cells
+ * byte  1 if happy, 0 otherwise, for each roundy in the grid
+ * for each roundy in the grid, if HAS_COLLISIONS:
+ *   byte  mask of the directions with collisions, bit {@link Direction#ordinal()}
+ *   int   closest id, int distance, int count for each direction in the mask
+ * </pre>
+ */
+public final class FlatworldSnapshot {
+
+    private static final int MAGIC = 0x52494657; // RIFW
+    private static final short VERSION = 1;
+
+    private static final int HAS_RANDOM_STATE = 1;
+    private static final int HAS_COLLISIONS = 1 << 1;
+    private static final int SPARSE = 1 << 2;
+
+    private static final int NOT_IN_GRID = -1;
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private FlatworldSnapshot() {
+    }
+
+    /**
+     * @param flatworld world to save, with its collisions marked
+     * @param userFlags state of the caller saved along with the world
+     * @return the snapshot
+     */
+    public static byte[] save(Flatworld flatworld, int userFlags) {
+        Roundy[] roundies = flatworld.getRoundies();
+        RandomSource random = flatworld.getRandomSource();
+        boolean hasRandomState = random instanceof SeedableRandomSource;
+        boolean sparse = flatworld.isSparse();
+
+        int size = 4 + 2 + 1 + 4 + 4 + 4 + (hasRandomState ? 8 : 0) + roundies.length * 4
+                + (sparse ? 0 : flatworld.getFreeCellCount() * 4);
+        for (Roundy roundy : roundies) {
+            if (roundy != null) {
+                size += 1 + 1 + Integer.bitCount(roundy.getCollisionDirections()) * 12;
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC);
+        buffer.putShort(VERSION);
+        buffer.put((byte) (HAS_COLLISIONS | (hasRandomState ? HAS_RANDOM_STATE : 0) | (sparse ? SPARSE : 0)));
+        buffer.putInt(userFlags);
+        buffer.putInt(flatworld.getGridSize());
+        buffer.putInt(roundies.length);
+        if (hasRandomState) {
+            buffer.putLong(((SeedableRandomSource) random).getState());
+        }
+
+        for (Roundy roundy : roundies) {
+            buffer.putInt(roundy == null ? NOT_IN_GRID : roundy.getCellIndex());
+        }
+        if (!sparse) {
+            for (int slot = 0; slot < flatworld.getFreeCellCount(); slot++) {
+                buffer.putInt(flatworld.getFreeCell(slot));
+            }
+        }
+        for (Roundy roundy : roundies) {
+            if (roundy != null) {
+                buffer.put((byte) (roundy.isHappy() ? 1 : 0));
+            }
+        }
+        for (Roundy roundy : roundies) {
+            if (roundy != null) {
+                int directions = roundy.getCollisionDirections();
+                buffer.put((byte) directions);
+                for (Direction direction : DIRECTIONS) {
+                    if ((directions & (1 << direction.ordinal())) != 0) {
+                        buffer.putInt(roundy.getClosestId(direction));
+                        buffer.putInt(roundy.getClosestDistance(direction));
+                        buffer.putInt(roundy.getCollisionCount(direction));
+                    }
+                }
+            }
+        }
+        return buffer.array();
+    }
+
+    public static void save(Flatworld flatworld, int userFlags, OutputStream out) throws IOException {
+        out.write(save(flatworld, userFlags));
+    }
+
+    /**
+     * Replace the state of a world with the one saved in a snapshot, not in validation mode.
+     *
+     * @see #restore(Flatworld, byte[], boolean)
+     */
+    public static int restore(Flatworld flatworld, byte[] snapshot) {
+        return restore(flatworld, snapshot, false);
+    }
+
+    /**
+     * Replace the state of a world with the one saved in a snapshot.
+     *
+     * @param flatworld world with the same grid size and number of roundies as the saved one
+     * @param snapshot  bytes returned by {@link #save(Flatworld, int)}
+     * @param validate  true to look for the collisions again and check that they are the ones
+     *                  saved, rather than trusting them
+     * @return the flags of the caller saved along with the world
+     * @throws IllegalArgumentException if the snapshot is not valid or does not fit the world, in
+     *                                  which case the world has to be initialized again
+     */
+    public static int restore(Flatworld flatworld, byte[] snapshot, boolean validate) {
+        // the log records the snapshot rather than the roundies placed from it
+        ReplayLog replayLog = flatworld.getReplayLog();
+        flatworld.setReplayLog(null);
+        try {
+            int userFlags = restore(flatworld, ByteBuffer.wrap(snapshot), validate);
+            if (replayLog != null) {
+                replayLog.recordRestore(flatworld, flatworld.isIncrementalCollisions(), snapshot);
+            }
+            return userFlags;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated snapshot", e);
+        } finally {
+            flatworld.setReplayLog(replayLog);
+        }
+    }
+
+    public static int restore(Flatworld flatworld, InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        int read;
+        while ((read = in.read(chunk)) != -1) {
+            bytes.write(chunk, 0, read);
+        }
+        return restore(flatworld, bytes.toByteArray());
+    }
+
+    private static int restore(Flatworld flatworld, ByteBuffer buffer, boolean validate) {
+        if (buffer.getInt() != MAGIC) {
+            throw new IllegalArgumentException("Not a Flatworld snapshot");
+        }
+        short version = buffer.getShort();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported snapshot version " + version);
+        }
+        int flags = buffer.get();
+        int userFlags = buffer.getInt();
+        int gridSize = buffer.getInt();
+        int roundyCount = buffer.getInt();
+        if (gridSize != flatworld.getGridSize() || roundyCount != flatworld.getRoundyCount()) {
+            throw new IllegalArgumentException("Snapshot of a " + gridSize + "x" + gridSize + " grid with "
+                    + roundyCount + " roundies does not fit a " + flatworld.getGridSize() + "x"
+                    + flatworld.getGridSize() + " grid with " + flatworld.getRoundyCount() + " roundies");
+        }
+        if ((flags & HAS_RANDOM_STATE) != 0) {
+            long state = buffer.getLong();
+            if (flatworld.getRandomSource() instanceof SeedableRandomSource) {
+                ((SeedableRandomSource) flatworld.getRandomSource()).setState(state);
+            }
+        }
+
+        int cellCount = gridSize * gridSize;
+        flatworld.init();
+        Roundy[] roundies = flatworld.getRoundies();
+        for (int id = 0; id < roundyCount; id++) {
+            int cellIndex = buffer.getInt();
+            if (cellIndex == NOT_IN_GRID) {
+                continue;
+            }
+            if (cellIndex < 0 || cellIndex >= cellCount || flatworld.isOccupied(cellIndex)) {
+                throw new IllegalArgumentException("Roundy " + id + " in invalid cell " + cellIndex);
+            }
+            flatworld.placeRoundy(id, cellIndex);
+        }
+        // the order of the free cells, if any, is kept only by a world which is not sparse either,
+        // which rejects any cell not free or listed twice
+        if ((flags & SPARSE) == 0) {
+            if (flatworld.isSparse()) {
+                buffer.position(buffer.position() + flatworld.getFreeCellCount() * 4);
+            } else {
+                int[] freeCells = new int[flatworld.getFreeCellCount()];
+                for (int slot = 0; slot < freeCells.length; slot++) {
+                    freeCells[slot] = buffer.getInt();
+                }
+                flatworld.setFreeCells(freeCells);
+            }
+        }
+
+        int happyStart = buffer.position();
+        for (Roundy roundy : roundies) {
+            if (roundy != null) {
+                buffer.get();
+            }
+        }
+
+        if ((flags & HAS_COLLISIONS) != 0) {
+            // closest id, distance and count by id and direction, 0 for the directions not saved
+            int[] saved = validate ? new int[roundyCount * DIRECTIONS.length * 3] : null;
+            for (Roundy roundy : roundies) {
+                if (roundy != null) {
+                    int directions = buffer.get();
+                    for (Direction direction : DIRECTIONS) {
+                        if ((directions & (1 << direction.ordinal())) != 0) {
+                            int closestId = buffer.getInt();
+                            int distance = buffer.getInt();
+                            int count = buffer.getInt();
+                            checkCollisions(roundies, gridSize, roundy, direction, closestId, distance, count);
+                            roundy.setCollisions(direction, closestId, distance, count);
+                            if (saved != null) {
+                                int slot = (roundy.getId() * DIRECTIONS.length + direction.ordinal()) * 3;
+                                saved[slot] = closestId;
+                                saved[slot + 1] = distance;
+                                saved[slot + 2] = count;
+                            }
+                        }
+                    }
+                }
+            }
+            if (validate) {
+                flatworld.findUnhappyRoundies();
+                checkSameCollisions(roundies, saved);
+            } else {
+                flatworld.restoreCollisions();
+            }
+        } else {
+            flatworld.findUnhappyRoundies();
+        }
+
+        // happiness as it was saved, whatever looking for collisions did
+        buffer.position(happyStart);
+        for (Roundy roundy : roundies) {
+            if (roundy != null) {
+                roundy.setHappy(buffer.get() != 0);
+            }
+        }
+        return userFlags;
+    }
+
+    /**
+     * @param saved closest id, distance and count saved by id and direction, 0 for the directions
+     *              not saved
+     * @throws IllegalArgumentException unless the collisions of each roundy towards each direction
+     *                                  are the ones saved
+     */
+    private static void checkSameCollisions(Roundy[] roundies, int[] saved) {
+        for (Roundy roundy : roundies) {
+            if (roundy == null) {
+                continue;
+            }
+            for (Direction direction : DIRECTIONS) {
+                int slot = (roundy.getId() * DIRECTIONS.length + direction.ordinal()) * 3;
+                int count = roundy.getCollisionCount(direction);
+                if (count != saved[slot + 2] || count != 0 && (roundy.getClosestId(direction) != saved[slot]
+                        || roundy.getClosestDistance(direction) != saved[slot + 1])) {
+                    throw new IllegalArgumentException("Roundy " + roundy.getId() + " has collisions towards "
+                            + direction + " not on the board: closest " + saved[slot] + ", distance "
+                            + saved[slot + 1] + ", count " + saved[slot + 2] + " instead of closest "
+                            + roundy.getClosestId(direction) + ", distance " + roundy.getClosestDistance(direction)
+                            + ", count " + count);
+                }
+            }
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException unless closestId is a roundy in the grid, distance cells
+     *                                  away from roundy along the direction, and count is a number
+     *                                  of roundies which fits the line
+     */
+    private static void checkCollisions(Roundy[] roundies, int gridSize, Roundy roundy, Direction direction,
+                                        int closestId, int distance, int count) {
+        Roundy closest = closestId >= 0 && closestId < roundies.length ? roundies[closestId] : null;
+        if (closest == null || distance <= 0 || distance >= gridSize || count <= 0 || count >= gridSize
+                || closest.getRowIndex() != roundy.getRowIndex() + distance * direction.getRowStep()
+                || closest.getColumnIndex() != roundy.getColumnIndex() + distance * direction.getColumnStep()) {
+            throw new IllegalArgumentException("Roundy " + roundy.getId() + " has invalid collisions towards "
+                    + direction + ": closest " + closestId + ", distance " + distance + ", count " + count);
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package selantoapps.roundyinflatworld.controller;
+
+import selantoapps.roundyinflatworld.model.Roundy;
+
+public interface HappinessListener {
+    void onHappy(Roundy roundy);
+
+    void onUnHappy(Roundy roundy);
+}
@@ -0,0 +1,173 @@
+package selantoapps.roundyinflatworld.controller;
+
+import java.util.Arrays;
+
+import selantoapps.roundyinflatworld.model.Roundy;
+import selantoapps.roundyinflatworld.settings.Direction;
+
+/**
+ * A {@link CollisionDetector} which does not compare every roundy with every other one.
+ * <p>
+ * The occupied cells are indexed by row, by column and by both diagonals, each line sorted along
+ * its own axis. Two roundies collide only when they are on the same line, so the collisions are
+ * read directly from the sorted lines: a roundy can hit all the roundies before it towards NORTH,
+ * WEST, NORTH_WEST or NORTH_EAST, and all the ones after it in the opposite direction, the
+ * closest being its neighbours on the line.
+ * <p>
+ * Building the indexes costs O(n log n), then each roundy costs O(1) per line.
+ * <p>
+ * Between two full markings, roundies entering or leaving a cell only walk the four lines
+ * crossing that cell, so each game event costs O(grid size) instead of O(n^2).
+ */
+public class LineIndexCollisionDetector extends CollisionDetector {
+
+    private static final int ROW = 0;
+    private static final int COLUMN = 1;
+    private static final int DIAGONAL = 2; // NW-SE
+    private static final int ANTI_DIAGONAL = 3; // SW-NE
+
+    // each key packs (line, position along the line) in the high bits and the roundy index in the
+    // low bits, so a single sort groups roundies by line and orders them along it
+    private long[] keys = new long[0];
+
+    // id of the roundy occupying each cell, NO_ROUNDY when empty
+    private int[] cellRoundies;
+
+    private static final int NO_ROUNDY = Roundy.NO_ROUNDY;
+
+    public LineIndexCollisionDetector(int gridSize) {
+        super(gridSize);
+    }
+
+    @Override
+    public void indexRoundies(Roundy[] roundies) {
+        if (cellRoundies == null) {
+            cellRoundies = new int[gridSize * gridSize];
+        }
+        Arrays.fill(cellRoundies, NO_ROUNDY);
+        for (Roundy roundy : roundies) {
+            if (roundy != null) {
+                cellRoundies[roundy.getCellIndex()] = roundy.getId();
+            }
+        }
+    }
+
+    @Override
+    public void markCollisions(Roundy[] roundies, CollisionListener listener) {
+        if (keys.length < roundies.length) {
+            keys = new long[roundies.length];
+        }
+        indexRoundies(roundies);
+
+        markCollisions(roundies, listener, ROW, Direction.WEST, Direction.EAST);
+        markCollisions(roundies, listener, COLUMN, Direction.NORTH, Direction.SOUTH);
+        markCollisions(roundies, listener, DIAGONAL, Direction.NORTH_WEST, Direction.SOUTH_EAST);
+        markCollisions(roundies, listener, ANTI_DIAGONAL, Direction.NORTH_EAST, Direction.SOUTH_WEST);
+    }
+
+    /**
+     * Sort the roundies along one family of lines and save, for each roundy, its neighbours on the
+     * line and how many roundies are before and after it.
+     *
+     * @param roundies  roundies in the grid
+     * @param listener  notified once for each couple of neighbours
+     * @param lineType  one of {@link #ROW}, {@link #COLUMN}, {@link #DIAGONAL}, {@link #ANTI_DIAGONAL}
+     * @param backward  direction from a roundy towards the ones before it on the line
+     * @param forward   direction from a roundy towards the ones after it on the line
+     */
+    private void markCollisions(Roundy[] roundies, CollisionListener listener, int lineType,
+                                Direction backward, Direction forward) {
+        int size = 0;
+        for (int i = 0; i < roundies.length; i++) {
+            Roundy roundy = roundies[i];
+            if (roundy != null) {
+                long linePosition = (long) getLine(roundy, lineType) * gridSize + getPosition(roundy, lineType);
+                keys[size++] = linePosition << 32 | i;
+            }
+        }
+        Arrays.sort(keys, 0, size);
+
+        int lineStart = 0;
+        for (int i = 1; i <= size; i++) {
+            if (i < size && getLine(keys[i]) == getLine(keys[lineStart])) {
+                continue;
+            }
+            // keys[lineStart, i) are on the same line, sorted along it
+            for (int k = lineStart; k < i; k++) {
+                Roundy roundy = roundies[(int) keys[k]];
+                if (k > lineStart) {
+                    Roundy previous = roundies[(int) keys[k - 1]];
+                    int distance = getPosition(keys[k]) - getPosition(keys[k - 1]);
+                    roundy.setCollisions(backward, previous.getId(), distance, k - lineStart);
+                    listener.onCollisionFound(roundy, previous);
+                }
+                if (k < i - 1) {
+                    Roundy next = roundies[(int) keys[k + 1]];
+                    int distance = getPosition(keys[k + 1]) - getPosition(keys[k]);
+                    roundy.setCollisions(forward, next.getId(), distance, i - 1 - k);
+                }
+            }
+            lineStart = i;
+        }
+    }
+
+    @Override
+    public void addRoundy(Roundy roundyA, Roundy[] roundies, CollisionListener listener) {
+        super.addRoundy(roundyA, roundies, listener);
+        cellRoundies[roundyA.getCellIndex()] = roundyA.getId();
+    }
+
+    /**
+     * Walk the grid from the cell of roundyA along the direction until a roundy is found.
+     */
+    @Override
+    protected Roundy lookUpClosest(Roundy roundyA, Roundy[] roundies, Direction direction) {
+        int rowStep = direction.getRowStep();
+        int columnStep = direction.getColumnStep();
+        int rowIndex = roundyA.getRowIndex() + rowStep;
+        int columnIndex = roundyA.getColumnIndex() + columnStep;
+        while (rowIndex >= 0 && rowIndex < gridSize && columnIndex >= 0 && columnIndex < gridSize) {
+            int id = cellRoundies[rowIndex * gridSize + columnIndex];
+            if (id != NO_ROUNDY) {
+                return roundies[id];
+            }
+            rowIndex += rowStep;
+            columnIndex += columnStep;
+        }
+        return null;
+    }
+
+    @Override
+    public void removeRoundy(Roundy roundyA, Roundy[] roundies, CollisionListener listener) {
+        // the cell may already be taken by the roundy which hit roundyA
+        if (cellRoundies[roundyA.getCellIndex()] == roundyA.getId()) {
+            cellRoundies[roundyA.getCellIndex()] = NO_ROUNDY;
+        }
+        super.removeRoundy(roundyA, roundies, listener);
+    }
+
+    private long getLine(long key) {
+        return (key >>> 32) / gridSize;
+    }
+
+    private int getPosition(long key) {
+        return (int) ((key >>> 32) % gridSize);
+    }
+
+    private int getLine(Roundy roundy, int lineType) {
+        switch (lineType) {
+            case ROW:
+                return roundy.getRowIndex();
+            case COLUMN:
+                return roundy.getColumnIndex();
+            case DIAGONAL:
+                return roundy.getRowIndex() - roundy.getColumnIndex() + gridSize - 1;
+            default:
+                return roundy.getRowIndex() + roundy.getColumnIndex();
+        }
+    }
+
+    private int getPosition(Roundy roundy, int lineType) {
+        return lineType == ROW ? roundy.getColumnIndex() : roundy.getRowIndex();
+    }
+}
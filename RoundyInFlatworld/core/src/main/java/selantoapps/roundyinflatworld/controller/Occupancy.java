@@ -0,0 +1,81 @@
+package selantoapps.roundyinflatworld.controller;
+
+import selantoapps.roundyinflatworld.utils.RandomSource;
+
+/**
+ * The cells of the grid occupied by roundies, as {@link Flatworld} sees them: which ones are free
+ * and a free one picked at random for each new roundy.
+ * <p>
+ * A {@link DenseOccupancy} keeps a slot for every cell of the grid, a {@link SparseOccupancy}
+ * only the occupied cells, for the grids too large to keep anything per cell.
+ */
+abstract class Occupancy {
+
+    // above about 8 MB of dense slots, boards with few roundies keep only the occupied cells
+    private static final int MAX_DENSE_CELL_COUNT = 1 << 20;
+
+    protected final int cellCount;
+
+    protected Occupancy(int cellCount) {
+        this.cellCount = cellCount;
+    }
+
+    /**
+     * @param cellCount   number of cells of the grid
+     * @param roundyCount the most roundies the grid ever holds at once
+     * @return a sparse occupancy when the grid is large and at most half of it is ever occupied,
+     * so that a free cell is found within 2 random picks on average, a dense one otherwise
+     */
+    static Occupancy create(int cellCount, int roundyCount) {
+        if (cellCount > MAX_DENSE_CELL_COUNT && roundyCount <= cellCount / 2) {
+            return new SparseOccupancy(cellCount, roundyCount);
+        }
+        return new DenseOccupancy(cellCount);
+    }
+
+    /**
+     * Free all the cells.
+     */
+    abstract void clear();
+
+    abstract boolean isOccupied(int cellIndex);
+
+    /**
+     * @param cellIndex a free cell
+     */
+    abstract void occupy(int cellIndex);
+
+    /**
+     * @param cellIndex an occupied cell
+     */
+    abstract void free(int cellIndex);
+
+    abstract int getFreeCellCount();
+
+    /**
+     * @return a free cell, each one with the same chance
+     */
+    abstract int pickFreeCell(RandomSource random);
+
+    /**
+     * @return true if the free cells are kept in the order they are picked in, see
+     * {@link #getFreeCell(int)}
+     */
+    abstract boolean isOrdered();
+
+    /**
+     * @param slot from 0 to {@link #getFreeCellCount()} excluded
+     * @return the free cell in the slot, the one picked when the random source returns the slot
+     * @throws UnsupportedOperationException if the free cells have no order
+     */
+    abstract int getFreeCell(int slot);
+
+    /**
+     * Put the free cells in the specified order.
+     *
+     * @param cells all the free cells, each one once
+     * @throws IllegalArgumentException      if the cells are not the free ones
+     * @throws UnsupportedOperationException if the free cells have no order
+     */
+    abstract void setFreeCells(int[] cells);
+}
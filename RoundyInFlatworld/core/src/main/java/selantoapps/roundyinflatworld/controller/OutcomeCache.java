@@ -0,0 +1,131 @@
+package selantoapps.roundyinflatworld.controller;
+
+import selantoapps.roundyinflatworld.model.Chain;
+import selantoapps.roundyinflatworld.model.Roundy;
+import selantoapps.roundyinflatworld.settings.Direction;
+
+/**
+ * Memoized {@link Flatworld#predictClick(int, Direction)} for each roundy and direction, e.g. to
+ * show what each click would do or to let an auto-tester pick its clicks.
+ * <p>
+ * The chain a click moves depends only on the roundies on the line of the roundy clicked along
+ * the direction of the click. Each line of the grid, in each of its 4 orientations, has the stamp
+ * of its last change, and each outcome the stamp of its computation: an outcome is still valid if
+ * its roundy did not move and nothing changed on its line since. A click changes the cells of one
+ * line only, so it invalidates the outcomes on that line and on the lines crossing its chain,
+ * while the outcomes elsewhere are kept.
+ * <p>
+ * The cache must be set as the {@link BoardListener} of its world.
+ */
+public class OutcomeCache implements BoardListener {
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private static final int HORIZONTAL = 0;
+    private static final int VERTICAL = 1;
+    // from north west to south east
+    private static final int DIAGONAL = 2;
+    // from south west to north east
+    private static final int ANTI_DIAGONAL = 3;
+
+    private final Flatworld flatworld;
+    private final int gridSize;
+
+    // stamp of the last change of each line, by orientation and line
+    private final long[][] lineStamps = new long[4][];
+    // stamp of the last change of the whole board
+    private long boardStamp;
+    private long clock;
+
+    // by id * 8 + direction ordinal, a stamp of 0 for an outcome never computed
+    private final Chain[] outcomes;
+    private final long[] outcomeStamps;
+    private final int[] outcomeCells;
+
+    private long hitCount;
+    private long missCount;
+
+    public OutcomeCache(Flatworld flatworld) {
+        this.flatworld = flatworld;
+        gridSize = flatworld.getGridSize();
+        lineStamps[HORIZONTAL] = new long[gridSize];
+        lineStamps[VERTICAL] = new long[gridSize];
+        lineStamps[DIAGONAL] = new long[gridSize * 2 - 1];
+        lineStamps[ANTI_DIAGONAL] = new long[gridSize * 2 - 1];
+        int size = flatworld.getRoundyCount() * DIRECTIONS.length;
+        outcomes = new Chain[size];
+        outcomeStamps = new long[size];
+        outcomeCells = new int[size];
+        boardStamp = ++clock;
+    }
+
+    /**
+     * @return the chain a click on the roundy towards the direction would move, null if the roundy
+     * is not in the grid or cannot collide with anybody in that direction
+     */
+    public Chain getOutcome(int id, Direction direction) {
+        Roundy roundy = flatworld.getRoundy(id);
+        if (roundy == null) {
+            return null;
+        }
+        int cellIndex = roundy.getCellIndex();
+        int key = id * DIRECTIONS.length + direction.ordinal();
+        long stamp = outcomeStamps[key];
+        if (stamp != 0 && outcomeCells[key] == cellIndex && stamp >= boardStamp
+                && stamp >= getLineStamp(direction, cellIndex)) {
+            hitCount++;
+            return outcomes[key];
+        }
+        missCount++;
+        Chain outcome = flatworld.predictClick(id, direction);
+        outcomes[key] = outcome;
+        outcomeStamps[key] = clock;
+        outcomeCells[key] = cellIndex;
+        return outcome;
+    }
+
+    private long getLineStamp(Direction direction, int cellIndex) {
+        int rowIndex = cellIndex / gridSize;
+        int columnIndex = cellIndex % gridSize;
+        int rowStep = direction.getRowStep();
+        int columnStep = direction.getColumnStep();
+        if (rowStep == 0) {
+            return lineStamps[HORIZONTAL][rowIndex];
+        } else if (columnStep == 0) {
+            return lineStamps[VERTICAL][columnIndex];
+        } else if (rowStep == columnStep) {
+            return lineStamps[DIAGONAL][columnIndex - rowIndex + gridSize - 1];
+        }
+        return lineStamps[ANTI_DIAGONAL][rowIndex + columnIndex];
+    }
+
+    @Override
+    public void onCellChanged(int cellIndex) {
+        int rowIndex = cellIndex / gridSize;
+        int columnIndex = cellIndex % gridSize;
+        long stamp = ++clock;
+        lineStamps[HORIZONTAL][rowIndex] = stamp;
+        lineStamps[VERTICAL][columnIndex] = stamp;
+        lineStamps[DIAGONAL][columnIndex - rowIndex + gridSize - 1] = stamp;
+        lineStamps[ANTI_DIAGONAL][rowIndex + columnIndex] = stamp;
+    }
+
+    @Override
+    public void onBoardChanged() {
+        boardStamp = ++clock;
+    }
+
+    /**
+     * @return number of outcomes found in the cache
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return number of outcomes computed again
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+}
@@ -0,0 +1,244 @@
+package selantoapps.roundyinflatworld.controller;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+import selantoapps.roundyinflatworld.model.Chain;
+import selantoapps.roundyinflatworld.model.Roundy;
+import selantoapps.roundyinflatworld.utils.RandomSource;
+import selantoapps.roundyinflatworld.utils.SeedableRandomSource;
+
+/**
+ * Append-only binary log of the games played in a {@link Flatworld}, to play them again with a
+ * {@link ReplayPlayer}.
+ * <p>
+ * The world records in here, once set by {@link Flatworld#setReplayLog(ReplayLog)}, each of its
+ * games from {@link Flatworld#init()}: the state of its random source, the cell of each roundy
+ * placed and the direction taken by each click, so the games can be played again without the
+ * random source. A {@link #recordState(Flatworld)} saves the state of the roundies, which the
+ * player checks against the one it reaches.
+ * <p>
+ * Records are written to the channel through a buffer, when it is full or flushed. The first
+ * error writing to the channel stops the recording, the world goes on anyway: it is thrown by
+ * {@link #flush()} and {@link #close()}.
+ * <p>
+ * Layout, big-endian: int magic "RIFR", short version, then the records, each one a byte with its
+ * type followed by the fields listed by the type.
+ */
+public class ReplayLog implements Closeable {
+
+    static final int MAGIC = 0x52494652; // RIFR
+    static final short VERSION = 1;
+
+    /**
+     * int grid size, int number of roundies, byte {@link #SEEDED} and {@link #INCREMENTAL} flags,
+     * long state of the random source if SEEDED.
+     */
+    static final byte INIT = 1;
+    /**
+     * int id, int cell: {@link Flatworld#placeRoundy(int, int)}.
+     */
+    static final byte PLACE = 2;
+    /**
+     * int id, int cell: {@link Flatworld#addRoundy(int, int)}.
+     */
+    static final byte ADD = 3;
+    /**
+     * No fields: {@link Flatworld#findUnhappyRoundies()}.
+     */
+    static final byte FIND_UNHAPPY_ROUNDIES = 4;
+    /**
+     * int id, byte direction ordinal, int chain length, int dead id: a click which moved a chain.
+     */
+    static final byte CLICK = 5;
+    /**
+     * int grid size, int number of roundies, byte {@link #INCREMENTAL} flag, int length, the bytes
+     * of a {@link FlatworldSnapshot} restored.
+     */
+    static final byte RESTORE = 6;
+    /**
+     * int free cells, then for each roundy by id int cell, -1 if not in the grid, byte happy, byte
+     * directions of its collisions, int number of collisions.
+     */
+    static final byte STATE = 7;
+
+    static final int SEEDED = 1;
+    static final int INCREMENTAL = 1 << 1;
+
+    static final int NOT_IN_GRID = -1;
+
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer;
+    private IOException error;
+
+    public ReplayLog(WritableByteChannel channel) {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param channel    where the log is written, from its start
+     * @param bufferSize bytes kept before writing to the channel
+     */
+    public ReplayLog(WritableByteChannel channel, int bufferSize) {
+        this.channel = channel;
+        buffer = ByteBuffer.allocate(Math.max(bufferSize, 64));
+        buffer.putInt(MAGIC);
+        buffer.putShort(VERSION);
+    }
+
+    void recordInit(Flatworld flatworld, boolean incrementalCollisions) {
+        RandomSource random = flatworld.getRandomSource();
+        boolean seeded = random instanceof SeedableRandomSource;
+        if (!reserve(1 + 4 + 4 + 1 + 8)) {
+            return;
+        }
+        buffer.put(INIT);
+        buffer.putInt(flatworld.getGridSize());
+        buffer.putInt(flatworld.getRoundyCount());
+        buffer.put((byte) ((seeded ? SEEDED : 0) | (incrementalCollisions ? INCREMENTAL : 0)));
+        if (seeded) {
+            buffer.putLong(((SeedableRandomSource) random).getState());
+        }
+    }
+
+    void recordPlace(int id, int cellIndex) {
+        recordRoundy(PLACE, id, cellIndex);
+    }
+
+    void recordAdd(int id, int cellIndex) {
+        recordRoundy(ADD, id, cellIndex);
+    }
+
+    private void recordRoundy(byte type, int id, int cellIndex) {
+        if (reserve(1 + 4 + 4)) {
+            buffer.put(type);
+            buffer.putInt(id);
+            buffer.putInt(cellIndex);
+        }
+    }
+
+    void recordFindUnhappyRoundies() {
+        if (reserve(1)) {
+            buffer.put(FIND_UNHAPPY_ROUNDIES);
+        }
+    }
+
+    void recordClick(int id, Chain chain) {
+        if (reserve(1 + 4 + 1 + 4 + 4)) {
+            buffer.put(CLICK);
+            buffer.putInt(id);
+            buffer.put((byte) chain.getDirection().ordinal());
+            buffer.putInt(chain.getLength());
+            buffer.putInt(chain.getDeadRoundyId());
+        }
+    }
+
+    void recordRestore(Flatworld flatworld, boolean incrementalCollisions, byte[] snapshot) {
+        if (!reserve(1 + 4 + 4 + 1 + 4)) {
+            return;
+        }
+        buffer.put(RESTORE);
+        buffer.putInt(flatworld.getGridSize());
+        buffer.putInt(flatworld.getRoundyCount());
+        buffer.put((byte) (incrementalCollisions ? INCREMENTAL : 0));
+        buffer.putInt(snapshot.length);
+        // the snapshot may not fit in the buffer
+        int offset = 0;
+        while (offset < snapshot.length && reserve(1)) {
+            int length = Math.min(buffer.remaining(), snapshot.length - offset);
+            buffer.put(snapshot, offset, length);
+            offset += length;
+        }
+    }
+
+    /**
+     * Save the state of the roundies of the world, so that a {@link ReplayPlayer} can check that
+     * it reaches the same one. Meant for the end of a game, or whenever a game is suspected to go
+     * wrong.
+     */
+    public void recordState(Flatworld flatworld) {
+        Roundy[] roundies = flatworld.getRoundies();
+        if (!reserve(1 + 4)) {
+            return;
+        }
+        buffer.put(STATE);
+        buffer.putInt(flatworld.getFreeCellCount());
+        for (Roundy roundy : roundies) {
+            if (!reserve(4 + 1 + 1 + 4)) {
+                return;
+            }
+            if (roundy == null) {
+                buffer.putInt(NOT_IN_GRID);
+                buffer.put((byte) 0);
+                buffer.put((byte) 0);
+                buffer.putInt(0);
+            } else {
+                buffer.putInt(roundy.getCellIndex());
+                buffer.put((byte) (roundy.isHappy() ? 1 : 0));
+                buffer.put((byte) roundy.getCollisionDirections());
+                buffer.putInt(roundy.getCollisionCount());
+            }
+        }
+    }
+
+    /**
+     * Make room in the buffer, writing it to the channel if needed.
+     *
+     * @return false if the log stopped on an error
+     */
+    private boolean reserve(int bytes) {
+        if (error != null) {
+            return false;
+        }
+        if (buffer.remaining() < bytes) {
+            drain();
+        }
+        return error == null;
+    }
+
+    private void drain() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            error = e;
+        }
+        buffer.clear();
+    }
+
+    /**
+     * @return the error which stopped the recording, null if none
+     */
+    public IOException getError() {
+        return error;
+    }
+
+    /**
+     * Write to the channel the records still in the buffer.
+     *
+     * @throws IOException the error which stopped the recording, if any
+     */
+    public void flush() throws IOException {
+        if (error == null) {
+            drain();
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
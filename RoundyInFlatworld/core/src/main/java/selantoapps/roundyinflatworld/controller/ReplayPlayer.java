@@ -0,0 +1,274 @@
+package selantoapps.roundyinflatworld.controller;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+import selantoapps.roundyinflatworld.model.Chain;
+import selantoapps.roundyinflatworld.model.Roundy;
+import selantoapps.roundyinflatworld.settings.Direction;
+import selantoapps.roundyinflatworld.utils.SplitMixRandomSource;
+
+/**
+ * Plays again the games recorded in a {@link ReplayLog}, as fast as the world resolves them: there
+ * is nothing to show and nothing random, each roundy is placed in the cell recorded and each
+ * click takes the direction recorded.
+ * <p>
+ * The player checks that each click moves a chain as long as the recorded one, killing the same
+ * roundy, and that each state recorded is the one reached, throwing an
+ * {@link IllegalStateException} at the first record which does not match. The worlds are created
+ * by {@link #createCollisionDetector(int)}, so that the games of the app can be played with
+ * another collision detector.
+ */
+public class ReplayPlayer {
+
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer;
+    private Flatworld flatworld;
+    private final SplitMixRandomSource random = new SplitMixRandomSource(0);
+
+    private long recordCount;
+    private long gameCount;
+    private long clickCount;
+    private long stateCount;
+
+    public ReplayPlayer(ReadableByteChannel channel) {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param channel    where the log is read, from its start
+     * @param bufferSize bytes read at once from the channel
+     */
+    public ReplayPlayer(ReadableByteChannel channel, int bufferSize) {
+        this.channel = channel;
+        buffer = ByteBuffer.allocate(Math.max(bufferSize, 64));
+        buffer.limit(0);
+    }
+
+    /**
+     * @return the collision detector of the worlds where the games are played, by default the one
+     * the app uses
+     */
+    protected CollisionDetector createCollisionDetector(int gridSize) {
+        return Flatworld.createCollisionDetector(gridSize);
+    }
+
+    /**
+     * Play all the records in the log.
+     *
+     * @throws IOException           if the log cannot be read or is not a replay log
+     * @throws IllegalStateException if a game does not go as recorded
+     */
+    public void play() throws IOException {
+        if (!fill(4 + 2) || buffer.getInt() != ReplayLog.MAGIC) {
+            throw new IOException("Not a replay log");
+        }
+        short version = buffer.getShort();
+        if (version != ReplayLog.VERSION) {
+            throw new IOException("Unsupported replay log version " + version);
+        }
+        while (fill(1)) {
+            playRecord(buffer.get());
+            recordCount++;
+        }
+    }
+
+    private void playRecord(byte type) throws IOException {
+        switch (type) {
+            case ReplayLog.INIT: {
+                require(4 + 4 + 1);
+                int gridSize = buffer.getInt();
+                int roundyCount = buffer.getInt();
+                int flags = buffer.get();
+                if ((flags & ReplayLog.SEEDED) != 0) {
+                    require(8);
+                    random.setState(buffer.getLong());
+                }
+                prepareFlatworld(gridSize, roundyCount, flags);
+                flatworld.init();
+                gameCount++;
+                break;
+            }
+            case ReplayLog.PLACE:
+            case ReplayLog.ADD: {
+                require(4 + 4);
+                int id = buffer.getInt();
+                int cellIndex = buffer.getInt();
+                checkWorld();
+                if (id < 0 || id >= flatworld.getRoundyCount() || flatworld.getRoundy(id) != null) {
+                    throw diverged("roundy " + id + " cannot be placed");
+                }
+                if (cellIndex < 0 || cellIndex >= flatworld.getGridSize() * flatworld.getGridSize()
+                        || flatworld.isOccupied(cellIndex)) {
+                    throw diverged("cell " + cellIndex + " is not free for roundy " + id);
+                }
+                if (type == ReplayLog.PLACE) {
+                    flatworld.placeRoundy(id, cellIndex);
+                } else {
+                    flatworld.addRoundy(id, cellIndex);
+                }
+                break;
+            }
+            case ReplayLog.FIND_UNHAPPY_ROUNDIES:
+                checkWorld();
+                flatworld.findUnhappyRoundies();
+                break;
+            case ReplayLog.CLICK: {
+                require(4 + 1 + 4 + 4);
+                int id = buffer.getInt();
+                int ordinal = buffer.get();
+                if (ordinal < 0 || ordinal >= Direction.values().length) {
+                    throw new IOException("Unknown direction " + ordinal + " at record " + recordCount);
+                }
+                Direction direction = Direction.fromOrdinal(ordinal);
+                int length = buffer.getInt();
+                int deadId = buffer.getInt();
+                checkWorld();
+                if (id < 0 || id >= flatworld.getRoundyCount()) {
+                    throw diverged("no roundy " + id + " to click");
+                }
+                Chain chain = flatworld.click(id, direction);
+                if (chain == null) {
+                    throw diverged("roundy " + id + " cannot move " + direction);
+                }
+                if (chain.getLength() != length || chain.getDeadRoundyId() != deadId) {
+                    throw diverged(chain + " instead of " + length + " roundies up to " + deadId + " died");
+                }
+                clickCount++;
+                break;
+            }
+            case ReplayLog.RESTORE: {
+                require(4 + 4 + 1 + 4);
+                int gridSize = buffer.getInt();
+                int roundyCount = buffer.getInt();
+                int flags = buffer.get();
+                byte[] snapshot = new byte[buffer.getInt()];
+                read(snapshot);
+                prepareFlatworld(gridSize, roundyCount, flags);
+                try {
+                    FlatworldSnapshot.restore(flatworld, snapshot, true);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Invalid snapshot in record " + recordCount, e);
+                }
+                gameCount++;
+                break;
+            }
+            case ReplayLog.STATE:
+                checkState();
+                stateCount++;
+                break;
+            default:
+                throw new IOException("Unknown record " + type + " at record " + recordCount);
+        }
+    }
+
+    private void prepareFlatworld(int gridSize, int roundyCount, int flags) {
+        if (flatworld == null || flatworld.getGridSize() != gridSize
+                || flatworld.getRoundyCount() != roundyCount) {
+            flatworld = new Flatworld(createCollisionDetector(gridSize), gridSize, roundyCount, random);
+            // nobody keeps the chains
+            flatworld.setAllocationFree(true);
+        }
+        flatworld.setIncrementalCollisions((flags & ReplayLog.INCREMENTAL) != 0);
+    }
+
+    private void checkState() throws IOException {
+        require(4);
+        int freeCellCount = buffer.getInt();
+        checkWorld();
+        if (freeCellCount != flatworld.getFreeCellCount()) {
+            throw diverged(flatworld.getFreeCellCount() + " free cells instead of " + freeCellCount);
+        }
+        for (int id = 0; id < flatworld.getRoundyCount(); id++) {
+            require(4 + 1 + 1 + 4);
+            int cellIndex = buffer.getInt();
+            boolean happy = buffer.get() != 0;
+            int collisionDirections = buffer.get() & 0xff;
+            int collisionCount = buffer.getInt();
+            Roundy roundy = flatworld.getRoundy(id);
+            if (roundy == null) {
+                if (cellIndex != ReplayLog.NOT_IN_GRID) {
+                    throw diverged("roundy " + id + " not in the grid instead of in cell " + cellIndex);
+                }
+            } else if (roundy.getCellIndex() != cellIndex || roundy.isHappy() != happy
+                    || roundy.getCollisionDirections() != collisionDirections
+                    || roundy.getCollisionCount() != collisionCount) {
+                throw diverged(roundy + " with " + roundy.getCollisionCount() + " collisions instead of cell "
+                        + cellIndex + ", happy " + happy + ", " + collisionCount + " collisions");
+            }
+        }
+    }
+
+    private void checkWorld() throws IOException {
+        if (flatworld == null) {
+            throw new IOException("Record " + recordCount + " before any game");
+        }
+    }
+
+    private IllegalStateException diverged(String message) {
+        return new IllegalStateException("Record " + recordCount + ": " + message);
+    }
+
+    /**
+     * @return false if the log ended before the bytes requested
+     */
+    private boolean fill(int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return true;
+        }
+        buffer.compact();
+        try {
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer) < 0) {
+                    return false;
+                }
+            }
+        } finally {
+            buffer.flip();
+        }
+        return true;
+    }
+
+    private void require(int bytes) throws IOException {
+        if (!fill(bytes)) {
+            throw new EOFException("Log truncated at record " + recordCount);
+        }
+    }
+
+    private void read(byte[] bytes) throws IOException {
+        int offset = 0;
+        while (offset < bytes.length) {
+            require(1);
+            int length = Math.min(buffer.remaining(), bytes.length - offset);
+            buffer.get(bytes, offset, length);
+            offset += length;
+        }
+    }
+
+    /**
+     * @return the world of the last game played, null before the first one
+     */
+    public Flatworld getFlatworld() {
+        return flatworld;
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    public long getGameCount() {
+        return gameCount;
+    }
+
+    public long getClickCount() {
+        return clickCount;
+    }
+
+    public long getStateCount() {
+        return stateCount;
+    }
+}
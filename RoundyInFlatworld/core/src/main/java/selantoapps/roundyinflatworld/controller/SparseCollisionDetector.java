@@ -0,0 +1,247 @@
+package selantoapps.roundyinflatworld.controller;
+
+import java.util.Arrays;
+
+import selantoapps.roundyinflatworld.model.Roundy;
+import selantoapps.roundyinflatworld.settings.Direction;
+
+/**
+ * A {@link CollisionDetector} for grids too large to keep anything per cell, with roundies spread
+ * thin over them.
+ * <p>
+ * Like the {@link LineIndexCollisionDetector} it reads the collisions from the roundies sorted
+ * along each row, column and diagonal, but it keeps those lines instead of an index of the cells:
+ * each line holds the positions of its own roundies only, so the memory grows with the roundies and
+ * with the side of the grid, not with its area. The closest roundy along a direction is the
+ * neighbour on the line, found by a binary search rather than by walking the cells in between.
+ */
+public class SparseCollisionDetector extends CollisionDetector {
+
+    private static final int ROW = 0;
+    private static final int COLUMN = 1;
+    private static final int DIAGONAL = 2; // NW-SE
+    private static final int ANTI_DIAGONAL = 3; // SW-NE
+
+    // lines[lineType][line], null until a roundy enters the line
+    private final Line[][] lines;
+
+    public SparseCollisionDetector(int gridSize) {
+        super(gridSize);
+        lines = new Line[][]{
+                new Line[gridSize], new Line[gridSize], new Line[gridSize * 2 - 1], new Line[gridSize * 2 - 1]};
+    }
+
+    @Override
+    public void indexRoundies(Roundy[] roundies) {
+        for (Line[] linesOfType : lines) {
+            for (Line line : linesOfType) {
+                if (line != null) {
+                    line.size = 0;
+                }
+            }
+        }
+        for (Roundy roundy : roundies) {
+            if (roundy != null) {
+                for (int lineType = ROW; lineType <= ANTI_DIAGONAL; lineType++) {
+                    getOrCreateLine(roundy, lineType).append(getEntry(roundy, lineType));
+                }
+            }
+        }
+        for (Line[] linesOfType : lines) {
+            for (Line line : linesOfType) {
+                if (line != null && line.size > 1) {
+                    Arrays.sort(line.entries, 0, line.size);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void markCollisions(Roundy[] roundies, CollisionListener listener) {
+        indexRoundies(roundies);
+
+        markCollisions(roundies, listener, ROW, Direction.WEST, Direction.EAST);
+        markCollisions(roundies, listener, COLUMN, Direction.NORTH, Direction.SOUTH);
+        markCollisions(roundies, listener, DIAGONAL, Direction.NORTH_WEST, Direction.SOUTH_EAST);
+        markCollisions(roundies, listener, ANTI_DIAGONAL, Direction.NORTH_EAST, Direction.SOUTH_WEST);
+    }
+
+    /**
+     * Save, for each roundy, its neighbours on the lines of one type and how many roundies are
+     * before and after it.
+     *
+     * @param roundies roundies in the grid
+     * @param listener notified once for each couple of neighbours
+     * @param lineType one of {@link #ROW}, {@link #COLUMN}, {@link #DIAGONAL}, {@link #ANTI_DIAGONAL}
+     * @param backward direction from a roundy towards the ones before it on the line
+     * @param forward  direction from a roundy towards the ones after it on the line
+     */
+    private void markCollisions(Roundy[] roundies, CollisionListener listener, int lineType,
+                                Direction backward, Direction forward) {
+        for (Line line : lines[lineType]) {
+            if (line == null) {
+                continue;
+            }
+            long[] entries = line.entries;
+            int size = line.size;
+            for (int k = 0; k < size; k++) {
+                Roundy roundy = roundies[getId(entries[k])];
+                if (k > 0) {
+                    Roundy previous = roundies[getId(entries[k - 1])];
+                    int distance = getPosition(entries[k]) - getPosition(entries[k - 1]);
+                    roundy.setCollisions(backward, previous.getId(), distance, k);
+                    listener.onCollisionFound(roundy, previous);
+                }
+                if (k < size - 1) {
+                    Roundy next = roundies[getId(entries[k + 1])];
+                    int distance = getPosition(entries[k + 1]) - getPosition(entries[k]);
+                    roundy.setCollisions(forward, next.getId(), distance, size - 1 - k);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void addRoundy(Roundy roundyA, Roundy[] roundies, CollisionListener listener) {
+        super.addRoundy(roundyA, roundies, listener);
+        for (int lineType = ROW; lineType <= ANTI_DIAGONAL; lineType++) {
+            getOrCreateLine(roundyA, lineType).insert(getEntry(roundyA, lineType));
+        }
+    }
+
+    /**
+     * Search the line of roundyA along the direction for its neighbour on that side.
+     */
+    @Override
+    protected Roundy lookUpClosest(Roundy roundyA, Roundy[] roundies, Direction direction) {
+        int lineType = getLineType(direction);
+        Line line = lines[lineType][getLine(roundyA, lineType)];
+        if (line == null) {
+            return null;
+        }
+        long position = getPosition(roundyA, lineType);
+        int step = lineType == ROW ? direction.getColumnStep() : direction.getRowStep();
+        int index = step > 0
+                ? line.lowerBound((position + 1) << 32)
+                : line.lowerBound(position << 32) - 1;
+        return index < 0 || index >= line.size ? null : roundies[getId(line.entries[index])];
+    }
+
+    @Override
+    public void removeRoundy(Roundy roundyA, Roundy[] roundies, CollisionListener listener) {
+        for (int lineType = ROW; lineType <= ANTI_DIAGONAL; lineType++) {
+            Line line = lines[lineType][getLine(roundyA, lineType)];
+            if (line != null) {
+                line.remove(getEntry(roundyA, lineType));
+            }
+        }
+        super.removeRoundy(roundyA, roundies, listener);
+    }
+
+    private Line getOrCreateLine(Roundy roundy, int lineType) {
+        int index = getLine(roundy, lineType);
+        Line line = lines[lineType][index];
+        if (line == null) {
+            line = new Line();
+            lines[lineType][index] = line;
+        }
+        return line;
+    }
+
+    private static int getLineType(Direction direction) {
+        int rowStep = direction.getRowStep();
+        int columnStep = direction.getColumnStep();
+        if (rowStep == 0) {
+            return ROW;
+        } else if (columnStep == 0) {
+            return COLUMN;
+        } else if (rowStep == columnStep) {
+            return DIAGONAL;
+        }
+        return ANTI_DIAGONAL;
+    }
+
+    private int getLine(Roundy roundy, int lineType) {
+        switch (lineType) {
+            case ROW:
+                return roundy.getRowIndex();
+            case COLUMN:
+                return roundy.getColumnIndex();
+            case DIAGONAL:
+                return roundy.getRowIndex() - roundy.getColumnIndex() + gridSize - 1;
+            default:
+                return roundy.getRowIndex() + roundy.getColumnIndex();
+        }
+    }
+
+    private static int getPosition(Roundy roundy, int lineType) {
+        return lineType == ROW ? roundy.getColumnIndex() : roundy.getRowIndex();
+    }
+
+    /**
+     * @return the position along the line in the high bits and the id in the low bits, so that
+     * entries sort along the line
+     */
+    private static long getEntry(Roundy roundy, int lineType) {
+        return (long) getPosition(roundy, lineType) << 32 | roundy.getId();
+    }
+
+    private static int getPosition(long entry) {
+        return (int) (entry >>> 32);
+    }
+
+    private static int getId(long entry) {
+        return (int) entry;
+    }
+
+    /**
+     * The roundies on one line, sorted along it.
+     */
+    private static final class Line {
+
+        long[] entries = new long[2];
+        int size;
+
+        void append(long entry) {
+            if (size == entries.length) {
+                entries = Arrays.copyOf(entries, size * 2);
+            }
+            entries[size++] = entry;
+        }
+
+        void insert(long entry) {
+            int index = lowerBound(entry);
+            append(entry);
+            System.arraycopy(entries, index, entries, index + 1, size - 1 - index);
+            entries[index] = entry;
+        }
+
+        /**
+         * Removing an entry which is not on the line does nothing.
+         */
+        void remove(long entry) {
+            int index = Arrays.binarySearch(entries, 0, size, entry);
+            if (index >= 0) {
+                System.arraycopy(entries, index + 1, entries, index, size - 1 - index);
+                size--;
+            }
+        }
+
+        /**
+         * @return index of the first entry not smaller than the key, size if there is none
+         */
+        int lowerBound(long key) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (entries[middle] < key) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package selantoapps.roundyinflatworld.controller;
+
+import java.util.Arrays;
+
+import selantoapps.roundyinflatworld.utils.RandomSource;
+
+/**
+ * An {@link Occupancy} which keeps only the occupied cells, in an open-addressing hash set sized
+ * once for the most roundies the grid holds: its memory is proportional to the number of roundies,
+ * whatever the size of the grid.
+ * <p>
+ * A free cell is picked by drawing cells at random until a free one comes out, each free cell
+ * having the same chance. With at most half of the grid occupied that takes 2 draws on average,
+ * but the free cells have no order, so the picks depend on the occupied cells only.
+ */
+final class SparseOccupancy extends Occupancy {
+
+    private static final int EMPTY = -1;
+
+    // the occupied cells, EMPTY in the free buckets, a power of two at least twice the roundies
+    private final int[] buckets;
+    private final int mask;
+    private final int shift;
+    private int occupiedCount;
+
+    SparseOccupancy(int cellCount, int roundyCount) {
+        super(cellCount);
+        int capacity = Integer.highestOneBit(Math.max(2, roundyCount) * 2 - 1) << 1;
+        buckets = new int[capacity];
+        mask = capacity - 1;
+        shift = Integer.numberOfLeadingZeros(mask);
+        clear();
+    }
+
+    @Override
+    void clear() {
+        Arrays.fill(buckets, EMPTY);
+        occupiedCount = 0;
+    }
+
+    /**
+     * Fibonacci hashing: the high bits of the product spread consecutive cells far apart.
+     */
+    private int bucketOf(int cellIndex) {
+        return (cellIndex * 0x9E3779B9) >>> shift;
+    }
+
+    /**
+     * @return the bucket of the cell, or the first empty one where it would go
+     */
+    private int find(int cellIndex) {
+        int bucket = bucketOf(cellIndex);
+        while (buckets[bucket] != EMPTY && buckets[bucket] != cellIndex) {
+            bucket = (bucket + 1) & mask;
+        }
+        return bucket;
+    }
+
+    @Override
+    boolean isOccupied(int cellIndex) {
+        return buckets[find(cellIndex)] == cellIndex;
+    }
+
+    @Override
+    void occupy(int cellIndex) {
+        buckets[find(cellIndex)] = cellIndex;
+        occupiedCount++;
+    }
+
+    /**
+     * The cells after the one freed move back into the hole when their own bucket is not between
+     * the hole and where they are, so that no lookup stops early at the hole.
+     */
+    @Override
+    void free(int cellIndex) {
+        int hole = find(cellIndex);
+        int bucket = hole;
+        while (true) {
+            bucket = (bucket + 1) & mask;
+            int cell = buckets[bucket];
+            if (cell == EMPTY) {
+                break;
+            }
+            int home = bucketOf(cell);
+            // distance travelled from home to bucket, against the one from home to the hole
+            if (((bucket - home) & mask) >= ((bucket - hole) & mask)) {
+                buckets[hole] = cell;
+                hole = bucket;
+            }
+        }
+        buckets[hole] = EMPTY;
+        occupiedCount--;
+    }
+
+    @Override
+    int getFreeCellCount() {
+        return cellCount - occupiedCount;
+    }
+
+    @Override
+    int pickFreeCell(RandomSource random) {
+        if (occupiedCount == cellCount) {
+            throw new IllegalStateException("No free cell");
+        }
+        int cellIndex;
+        do {
+            cellIndex = random.nextInt(cellCount);
+        } while (isOccupied(cellIndex));
+        return cellIndex;
+    }
+
+    @Override
+    boolean isOrdered() {
+        return false;
+    }
+
+    @Override
+    int getFreeCell(int slot) {
+        throw new UnsupportedOperationException("The free cells of a sparse board have no order");
+    }
+
+    @Override
+    void setFreeCells(int[] cells) {
+        throw new UnsupportedOperationException("The free cells of a sparse board have no order");
+    }
+}
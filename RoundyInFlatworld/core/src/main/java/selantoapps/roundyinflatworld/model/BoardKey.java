@@ -0,0 +1,104 @@
+package selantoapps.roundyinflatworld.model;
+
+import java.util.Arrays;
+
+import selantoapps.roundyinflatworld.utils.Zobrist;
+
+/**
+ * Immutable identity of a board, to use as key of a table: the occupied cells in increasing order
+ * and, unless only the occupancy matters, the id of the roundy in each of those cells. Only the
+ * occupied cells are kept, so that a key grows with the roundies rather than with the grid.
+ * <p>
+ * Its hash code is the {@link Zobrist} hash of the board, the one Flatworld keeps up to date, while
+ * equality compares the boards themselves, so two different boards never share an entry of a table
+ * even when their hashes collide.
+ */
+public final class BoardKey {
+
+    // occupied cells, in increasing order
+    private final int[] cells;
+
+    // id of the roundy in each occupied cell, in the order of the cells, null if ids do not matter
+    private final int[] ids;
+
+    private final long hash;
+
+    private BoardKey(int[] cells, int[] ids, long hash) {
+        this.cells = cells;
+        this.ids = ids;
+        this.hash = hash;
+    }
+
+    /**
+     * @param cellsById cell of each roundy, negative for the roundies not in the grid
+     * @return the key of the board, telling apart boards with the same cells occupied by different
+     * roundies, hashed as {@link Zobrist#roundy(int, int)}
+     */
+    public static BoardKey of(int[] cellsById) {
+        return of(cellsById, true);
+    }
+
+    /**
+     * @param cellsById cell of each roundy, negative for the roundies not in the grid
+     * @return the key of the occupied cells, whatever the roundies occupying them, hashed as
+     * {@link Zobrist#cell(int)}
+     */
+    public static BoardKey occupancyOf(int[] cellsById) {
+        return of(cellsById, false);
+    }
+
+    private static BoardKey of(int[] cellsById, boolean withIds) {
+        int count = 0;
+        for (int cellIndex : cellsById) {
+            if (cellIndex >= 0) {
+                count++;
+            }
+        }
+        // cell and id of each roundy in the grid, to sort the ids by cell
+        long[] roundies = new long[count];
+        count = 0;
+        long hash = 0;
+        for (int id = 0; id < cellsById.length; id++) {
+            int cellIndex = cellsById[id];
+            if (cellIndex < 0) {
+                continue;
+            }
+            roundies[count++] = ((long) cellIndex << 32) | id;
+            hash ^= withIds ? Zobrist.roundy(id, cellIndex) : Zobrist.cell(cellIndex);
+        }
+        Arrays.sort(roundies);
+        int[] cells = new int[count];
+        int[] ids = withIds ? new int[count] : null;
+        for (int i = 0; i < count; i++) {
+            cells[i] = (int) (roundies[i] >>> 32);
+            if (withIds) {
+                ids[i] = (int) roundies[i];
+            }
+        }
+        return new BoardKey(cells, ids, hash);
+    }
+
+    /**
+     * @return the Zobrist hash of the board
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof BoardKey)) {
+            return false;
+        }
+        BoardKey other = (BoardKey) o;
+        return hash == other.hash && Arrays.equals(cells, other.cells) && Arrays.equals(ids, other.ids);
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
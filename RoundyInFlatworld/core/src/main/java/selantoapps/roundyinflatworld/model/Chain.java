@@ -0,0 +1,110 @@
+package selantoapps.roundyinflatworld.model;
+
+import java.util.Arrays;
+
+import selantoapps.roundyinflatworld.settings.Direction;
+
+/**
+ * The result of a click on a roundy: the sequence of roundies set in motion along one
+ * {@link Direction}.
+ * <p>
+ * The roundy with index 0 is the one clicked. Each roundy rolls until it hits the next one in the
+ * chain and stops in its cell, the next one gets the impulse and so on; the last roundy of the
+ * chain has nobody to hit and falls off the world.
+ * <p>
+ * A chain is not modified once built, unless it was created empty to be filled again and again by
+ * {@link #set(Direction, int[], int[], int)}.
+ */
+public final class Chain {
+
+    private Direction direction;
+
+    private final int[] roundyIds;
+
+    private final int[] cellIndexes;
+
+    private int length;
+
+    /**
+     * @param direction   direction of the movement of the whole chain
+     * @param roundyIds   ids of the roundies set in motion, in order
+     * @param cellIndexes cells where each of those roundies was before the click
+     */
+    public Chain(Direction direction, int[] roundyIds, int[] cellIndexes) {
+        this.direction = direction;
+        this.roundyIds = roundyIds;
+        this.cellIndexes = cellIndexes;
+        length = roundyIds.length;
+    }
+
+    /**
+     * An empty chain, to be filled by {@link #set(Direction, int[], int[], int)}.
+     *
+     * @param capacity maximum number of roundies in the chain
+     */
+    public Chain(int capacity) {
+        roundyIds = new int[capacity];
+        cellIndexes = new int[capacity];
+    }
+
+    /**
+     * Overwrite this chain, copying the first length roundy ids and cells specified.
+     */
+    public void set(Direction direction, int[] roundyIds, int[] cellIndexes, int length) {
+        this.direction = direction;
+        System.arraycopy(roundyIds, 0, this.roundyIds, 0, length);
+        System.arraycopy(cellIndexes, 0, this.cellIndexes, 0, length);
+        this.length = length;
+    }
+
+    /**
+     * Overwrite this chain with the roundies of the chain specified, which must fit in it.
+     */
+    public void set(Chain chain) {
+        set(chain.direction, chain.roundyIds, chain.cellIndexes, chain.length);
+    }
+
+    /**
+     * @return a copy of this chain that {@link #set(Direction, int[], int[], int)} does not change,
+     * e.g. to hand it to another thread while this one is filled by the next click
+     */
+    public Chain copy() {
+        return new Chain(direction, Arrays.copyOf(roundyIds, length), Arrays.copyOf(cellIndexes, length));
+    }
+
+    public Direction getDirection() {
+        return direction;
+    }
+
+    /**
+     * @return number of roundies set in motion, at least 2
+     */
+    public int getLength() {
+        return length;
+    }
+
+    public int getRoundyId(int index) {
+        return roundyIds[index];
+    }
+
+    /**
+     * @return the cell where the roundy with the specified index was before the click, which is
+     * also where the previous roundy in the chain stops
+     */
+    public int getCellIndex(int index) {
+        return cellIndexes[index];
+    }
+
+    public int getDeadRoundyId() {
+        return roundyIds[length - 1];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("Chain{direction=").append(direction.name());
+        for (int i = 0; i < length; i++) {
+            builder.append(i == 0 ? ", " : " -> ").append(roundyIds[i]).append('@').append(cellIndexes[i]);
+        }
+        return builder.append(" died}").toString();
+    }
+}
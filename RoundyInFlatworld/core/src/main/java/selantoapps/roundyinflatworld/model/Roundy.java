@@ -0,0 +1,185 @@
+package selantoapps.roundyinflatworld.model;
+
+import selantoapps.roundyinflatworld.settings.Direction;
+
+/**
+ * Represent a Roundy in the game with some information associated to it.
+ * <p>
+ * Collisions are kept in a fixed table indexed by {@link Direction#ordinal()}: for each direction
+ * the closest roundy that this one would hit, how far it is and how many roundies are on that
+ * side in total.
+ * <p>
+ * Where that information is kept is up to the subclasses: a {@link StandaloneRoundy} in its own
+ * fields, the roundies of a {@link RoundyStore} in arrays shared by all of them.
+ */
+public abstract class Roundy {
+
+    public static final int NO_ROUNDY = -1;
+
+    private static final int DIRECTION_COUNT = Direction.values().length;
+
+    private final int id;
+
+    /**
+     * @param id roundy identifier
+     */
+    protected Roundy(int id) {
+        this.id = id;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public abstract int getCellIndex();
+
+    public abstract int getRowIndex();
+
+    public abstract int getColumnIndex();
+
+    public abstract void setCellIndex(int cellIndex);
+
+    public abstract void setRowIndex(int rowIndex);
+
+    public abstract void setColumnIndex(int columnIndex);
+
+    public abstract boolean isHappy();
+
+    public abstract void setHappy(boolean happy);
+
+    /**
+     * @return bit mask with the bit {@link Direction#ordinal()} set for each direction in which
+     * this roundy can hit somebody
+     */
+    public abstract int getCollisionDirections();
+
+    /**
+     * @return total number of roundies that this one can hit, in all directions
+     */
+    public abstract int getCollisionCount();
+
+    /**
+     * @param slot {@link Direction#ordinal()} of the direction
+     */
+    protected abstract int readClosestId(int slot);
+
+    protected abstract int readClosestDistance(int slot);
+
+    protected abstract int readCollisionCount(int slot);
+
+    /**
+     * Overwrite one entry of the table of the collisions, without updating the totals.
+     */
+    protected abstract void writeCollisions(int slot, int closestId, int distance, int count);
+
+    /**
+     * Overwrite the totals returned by {@link #getCollisionDirections()} and
+     * {@link #getCollisionCount()}.
+     */
+    protected abstract void writeCollisionTotals(int collisionDirections, int collisionCount);
+
+    /**
+     * Save a collision with another roundy, keeping as closest one the nearest to this roundy
+     * along the direction. In case of tie the roundy with the smallest id is kept.
+     *
+     * @param id        identifier of the roundy that this one can hit
+     * @param direction direction towards that roundy
+     * @param distance  number of cells between the two roundies along the direction
+     */
+    public void addCollision(int id, Direction direction, int distance) {
+        int slot = direction.ordinal();
+        int count = readCollisionCount(slot);
+        int closestDistance = readClosestDistance(slot);
+        int closestId = readClosestId(slot);
+        if (count == 0 || distance < closestDistance || (distance == closestDistance && id < closestId)) {
+            closestId = id;
+            closestDistance = distance;
+        }
+        writeCollisions(slot, closestId, closestDistance, count + 1);
+        updateCollisionTotals(slot, count, count + 1);
+    }
+
+    /**
+     * Overwrite the collisions towards one direction.
+     *
+     * @param direction direction of the collisions
+     * @param closestId identifier of the closest roundy, {@link #NO_ROUNDY} if count is 0
+     * @param distance  number of cells between this roundy and the closest one
+     * @param count     number of roundies that this one can hit along the direction
+     */
+    public void setCollisions(Direction direction, int closestId, int distance, int count) {
+        int slot = direction.ordinal();
+        int previousCount = readCollisionCount(slot);
+        writeCollisions(slot, count == 0 ? NO_ROUNDY : closestId, count == 0 ? 0 : distance, count);
+        updateCollisionTotals(slot, previousCount, count);
+    }
+
+    private void updateCollisionTotals(int slot, int previousCount, int count) {
+        int collisionDirections = getCollisionDirections();
+        if (count == 0) {
+            collisionDirections &= ~(1 << slot);
+        } else {
+            collisionDirections |= 1 << slot;
+        }
+        writeCollisionTotals(collisionDirections, getCollisionCount() + count - previousCount);
+    }
+
+    public boolean hasCollisions() {
+        return getCollisionDirections() != 0;
+    }
+
+    public boolean hasCollisionTowards(Direction direction) {
+        return (getCollisionDirections() & (1 << direction.ordinal())) != 0;
+    }
+
+    public int getCollisionCount(Direction direction) {
+        return readCollisionCount(direction.ordinal());
+    }
+
+    /**
+     * @return identifier of the closest roundy that this one hits along the direction,
+     * {@link #NO_ROUNDY} if there is none
+     */
+    public int getClosestId(Direction direction) {
+        return readClosestId(direction.ordinal());
+    }
+
+    public int getClosestDistance(Direction direction) {
+        return readClosestDistance(direction.ordinal());
+    }
+
+    /**
+     * Look up the direction of one collision, as if all the roundies that this one can hit were
+     * listed direction by direction.
+     *
+     * @param index of the collision, from 0 to {@link #getCollisionCount()} excluded
+     * @return the direction of the collision with the specified index
+     */
+    public Direction getCollisionDirection(int index) {
+        for (int slot = 0; slot < DIRECTION_COUNT; slot++) {
+            index -= readCollisionCount(slot);
+            if (index < 0) {
+                return Direction.fromOrdinal(slot);
+            }
+        }
+        throw new IndexOutOfBoundsException("roundy " + id + " has " + getCollisionCount() + " collisions");
+    }
+
+    public void resetCollisions() {
+        for (int slot = 0; slot < DIRECTION_COUNT; slot++) {
+            writeCollisions(slot, NO_ROUNDY, 0, 0);
+        }
+        writeCollisionTotals(0, 0);
+    }
+
+    @Override
+    public String toString() {
+        return "Roundy{" +
+                "id=" + id +
+                ", cellIndex=" + getCellIndex() +
+                ", rowIndex=" + getRowIndex() +
+                ", columnIndex=" + getColumnIndex() +
+                ", happy=" + isHappy() +
+                '}';
+    }
+}
@@ -0,0 +1,155 @@
+package selantoapps.roundyinflatworld.model;
+
+import selantoapps.roundyinflatworld.settings.Direction;
+
+/**
+ * The information of many roundies kept in parallel arrays indexed by id, instead of in an object
+ * of its own for each roundy, for simulations with millions of roundies.
+ * <p>
+ * A {@link StandaloneRoundy} takes 4 objects of its own, about 200 bytes, while a roundy of the
+ * store takes about 80 bytes of arrays plus a 24-byte handle, the {@link Roundy} returned by
+ * {@link #getRoundy(int)}: a flyweight reading and writing the arrays, created once for each id.
+ * The distances and the counts of the collisions are kept in 16 bits, enough for any grid of
+ * Flatworld.
+ * <p>
+ * The handle of an id stands for whichever roundy has that id in the store: a roundy placed again
+ * with the same id reuses it.
+ */
+public final class RoundyStore {
+
+    private static final int DIRECTION_COUNT = Direction.values().length;
+
+    private final int[] cellIndexes;
+    private final int[] rowIndexes;
+    private final int[] columnIndexes;
+    private final boolean[] happy;
+    // bit i is set when there is at least one collision towards Direction.values()[i]
+    private final byte[] collisionDirections;
+    private final int[] collisionCounts;
+
+    // by id * DIRECTION_COUNT + direction ordinal
+    private final int[] closestIds;
+    private final char[] closestDistances;
+    private final char[] directionCounts;
+
+    private final Roundy[] handles;
+
+    /**
+     * @param capacity number of ids, from 0 to capacity excluded
+     */
+    public RoundyStore(int capacity) {
+        cellIndexes = new int[capacity];
+        rowIndexes = new int[capacity];
+        columnIndexes = new int[capacity];
+        happy = new boolean[capacity];
+        collisionDirections = new byte[capacity];
+        collisionCounts = new int[capacity];
+        closestIds = new int[capacity * DIRECTION_COUNT];
+        closestDistances = new char[capacity * DIRECTION_COUNT];
+        directionCounts = new char[capacity * DIRECTION_COUNT];
+        handles = new Roundy[capacity];
+    }
+
+    public int getCapacity() {
+        return handles.length;
+    }
+
+    /**
+     * @return the roundy with the id, whose information is the one last written for that id
+     */
+    public Roundy getRoundy(int id) {
+        Roundy roundy = handles[id];
+        if (roundy == null) {
+            roundy = new Handle(id);
+            roundy.resetCollisions();
+            handles[id] = roundy;
+        }
+        return roundy;
+    }
+
+    private final class Handle extends Roundy {
+
+        Handle(int id) {
+            super(id);
+        }
+
+        @Override
+        public int getCellIndex() {
+            return cellIndexes[getId()];
+        }
+
+        @Override
+        public int getRowIndex() {
+            return rowIndexes[getId()];
+        }
+
+        @Override
+        public int getColumnIndex() {
+            return columnIndexes[getId()];
+        }
+
+        @Override
+        public void setCellIndex(int cellIndex) {
+            cellIndexes[getId()] = cellIndex;
+        }
+
+        @Override
+        public void setRowIndex(int rowIndex) {
+            rowIndexes[getId()] = rowIndex;
+        }
+
+        @Override
+        public void setColumnIndex(int columnIndex) {
+            columnIndexes[getId()] = columnIndex;
+        }
+
+        @Override
+        public boolean isHappy() {
+            return happy[getId()];
+        }
+
+        @Override
+        public void setHappy(boolean happy) {
+            RoundyStore.this.happy[getId()] = happy;
+        }
+
+        @Override
+        public int getCollisionDirections() {
+            return collisionDirections[getId()] & 0xff;
+        }
+
+        @Override
+        public int getCollisionCount() {
+            return collisionCounts[getId()];
+        }
+
+        @Override
+        protected int readClosestId(int slot) {
+            return closestIds[getId() * DIRECTION_COUNT + slot];
+        }
+
+        @Override
+        protected int readClosestDistance(int slot) {
+            return closestDistances[getId() * DIRECTION_COUNT + slot];
+        }
+
+        @Override
+        protected int readCollisionCount(int slot) {
+            return directionCounts[getId() * DIRECTION_COUNT + slot];
+        }
+
+        @Override
+        protected void writeCollisions(int slot, int closestId, int distance, int count) {
+            int index = getId() * DIRECTION_COUNT + slot;
+            closestIds[index] = closestId;
+            closestDistances[index] = (char) distance;
+            directionCounts[index] = (char) count;
+        }
+
+        @Override
+        protected void writeCollisionTotals(int collisionDirections, int collisionCount) {
+            RoundyStore.this.collisionDirections[getId()] = (byte) collisionDirections;
+            collisionCounts[getId()] = collisionCount;
+        }
+    }
+}
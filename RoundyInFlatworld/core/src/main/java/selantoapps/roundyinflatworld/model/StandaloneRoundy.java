@@ -0,0 +1,122 @@
+package selantoapps.roundyinflatworld.model;
+
+import selantoapps.roundyinflatworld.settings.Direction;
+
+/**
+ * A {@link Roundy} which keeps its information in its own fields, created on its own.
+ */
+public final class StandaloneRoundy extends Roundy {
+
+    private static final int DIRECTION_COUNT = Direction.values().length;
+
+    private int cellIndex;
+
+    private int rowIndex;
+
+    private int columnIndex;
+
+    private boolean happy;
+
+    private final int[] closestIds = new int[DIRECTION_COUNT];
+
+    private final int[] closestDistances = new int[DIRECTION_COUNT];
+
+    private final int[] collisionCounts = new int[DIRECTION_COUNT];
+
+    // bit i is set when there is at least one collision towards Direction.values()[i]
+    private int collisionDirections;
+
+    private int collisionCount;
+
+    /**
+     * @param id          roundy identifier
+     * @param cellIndex   index of the cell in the grid occupied by this roundy
+     * @param rowIndex    row index of the cell occupied
+     * @param columnIndex column index of the cell occupied
+     */
+    public StandaloneRoundy(int id, int cellIndex, int rowIndex, int columnIndex) {
+        super(id);
+        this.cellIndex = cellIndex;
+        this.rowIndex = rowIndex;
+        this.columnIndex = columnIndex;
+        resetCollisions();
+    }
+
+    @Override
+    public int getCellIndex() {
+        return cellIndex;
+    }
+
+    @Override
+    public int getRowIndex() {
+        return rowIndex;
+    }
+
+    @Override
+    public int getColumnIndex() {
+        return columnIndex;
+    }
+
+    @Override
+    public void setCellIndex(int cellIndex) {
+        this.cellIndex = cellIndex;
+    }
+
+    @Override
+    public void setRowIndex(int rowIndex) {
+        this.rowIndex = rowIndex;
+    }
+
+    @Override
+    public void setColumnIndex(int columnIndex) {
+        this.columnIndex = columnIndex;
+    }
+
+    @Override
+    public boolean isHappy() {
+        return happy;
+    }
+
+    @Override
+    public void setHappy(boolean happy) {
+        this.happy = happy;
+    }
+
+    @Override
+    public int getCollisionDirections() {
+        return collisionDirections;
+    }
+
+    @Override
+    public int getCollisionCount() {
+        return collisionCount;
+    }
+
+    @Override
+    protected int readClosestId(int slot) {
+        return closestIds[slot];
+    }
+
+    @Override
+    protected int readClosestDistance(int slot) {
+        return closestDistances[slot];
+    }
+
+    @Override
+    protected int readCollisionCount(int slot) {
+        return collisionCounts[slot];
+    }
+
+    @Override
+    protected void writeCollisions(int slot, int closestId, int distance, int count) {
+        closestIds[slot] = closestId;
+        closestDistances[slot] = distance;
+        collisionCounts[slot] = count;
+    }
+
+    @Override
+    protected void writeCollisionTotals(int collisionDirections, int collisionCount) {
+        this.collisionDirections = collisionDirections;
+        this.collisionCount = collisionCount;
+    }
+}
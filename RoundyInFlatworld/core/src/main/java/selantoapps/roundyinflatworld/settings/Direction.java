@@ -0,0 +1,69 @@
+package selantoapps.roundyinflatworld.settings;
+
+/**
+ * Those are the directions defined by the game design in which a roundy can roll in the Flatworld
+ */
+public enum Direction {
+    NORTH,
+    NORTH_EAST,
+    EAST,
+    SOUTH_EAST,
+    SOUTH,
+    SOUTH_WEST,
+    WEST,
+    NORTH_WEST;
+
+    private static final Direction[] VALUES = values();
+
+    /**
+     * Like {@code values()[ordinal]} but without copying the array of values at each call.
+     */
+    public static Direction fromOrdinal(int ordinal) {
+        return VALUES[ordinal];
+    }
+
+    /**
+     * @return how the row index changes at each step along this direction: -1 going north, 1 going
+     * south, 0 otherwise
+     */
+    public int getRowStep() {
+        switch (this) {
+            case NORTH_WEST:
+            case NORTH:
+            case NORTH_EAST:
+                return -1;
+            case SOUTH_WEST:
+            case SOUTH:
+            case SOUTH_EAST:
+                return 1;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * @return how the column index changes at each step along this direction: -1 going west, 1
+     * going east, 0 otherwise
+     */
+    public int getColumnStep() {
+        switch (this) {
+            case NORTH_WEST:
+            case WEST:
+            case SOUTH_WEST:
+                return -1;
+            case NORTH_EAST:
+            case EAST:
+            case SOUTH_EAST:
+                return 1;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * @return the direction pointing the other way round, e.g. SOUTH for NORTH
+     */
+    public Direction getOpposite() {
+        return VALUES[(ordinal() + VALUES.length / 2) % VALUES.length];
+    }
+}
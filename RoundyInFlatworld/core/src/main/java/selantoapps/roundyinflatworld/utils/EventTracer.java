@@ -0,0 +1,142 @@
+package selantoapps.roundyinflatworld.utils;
+
+import selantoapps.roundyinflatworld.settings.Direction;
+
+/**
+ * Records the events of the game in a ring buffer of primitive fields, keeping only the most
+ * recent ones. Nothing is allocated while recording: events are turned into text only when the
+ * buffer is dumped.
+ * <p>
+ * Callers check the level before recording, so a disabled tracer costs a field read:
+ * <pre>
+ * if (tracer.isEnabled(EventTracer.EVENTS)) {
+ *     tracer.record(EventTracer.DEATH, roundy.getId(), roundy.getCellIndex(), 0);
+ * }
+ * </pre>
+ */
+public class EventTracer {
+
+    // levels
+    public static final int OFF = 0;
+    public static final int EVENTS = 1; // one event per game action
+    public static final int VERBOSE = 2; // also one event per collision found
+
+    // event types, with the meaning of their fields a, b and c
+    public static final int RECOMPUTE_BEGIN = 0; // roundies in the grid, -, -
+    public static final int RECOMPUTE_END = 1; // roundies in the grid, -, -
+    public static final int COLLISION_FOUND = 2; // roundy id, roundy id, -
+    public static final int MOVE = 3; // clicked roundy id, direction ordinal, cell
+    public static final int TRANSFER = 4; // hitting roundy id, hit roundy id, cell of the hit
+    public static final int DEATH = 5; // roundy id, last cell, -
+
+    private static final String[] EVENT_NAMES = {
+            "RECOMPUTE_BEGIN", "RECOMPUTE_END", "COLLISION_FOUND", "MOVE", "TRANSFER", "DEATH"};
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final int capacity;
+    private int level = OFF;
+
+    // allocated when the tracer is enabled for the first time
+    private long[] timestamps;
+    private byte[] types;
+    private int[] fieldsA;
+    private int[] fieldsB;
+    private int[] fieldsC;
+
+    // total number of events recorded, the last capacity ones are in the buffer
+    private long count;
+
+    public EventTracer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity number of events kept, rounded up to a power of two
+     */
+    public EventTracer(int capacity) {
+        this.capacity = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * @param level one of {@link #OFF}, {@link #EVENTS}, {@link #VERBOSE}
+     */
+    public void setLevel(int level) {
+        if (level > OFF && timestamps == null) {
+            timestamps = new long[capacity];
+            types = new byte[capacity];
+            fieldsA = new int[capacity];
+            fieldsB = new int[capacity];
+            fieldsC = new int[capacity];
+        }
+        this.level = level;
+    }
+
+    /**
+     * @return true if events of the specified level are recorded
+     */
+    public boolean isEnabled(int level) {
+        return level <= this.level;
+    }
+
+    /**
+     * Record an event, the oldest one is overwritten when the buffer is full. The caller must
+     * check {@link #isEnabled(int)} first.
+     *
+     * @param type one of the event types, such as {@link #MOVE}
+     */
+    public void record(int type, int a, int b, int c) {
+        int slot = (int) (count++ & (capacity - 1));
+        timestamps[slot] = System.nanoTime();
+        types[slot] = (byte) type;
+        fieldsA[slot] = a;
+        fieldsB[slot] = b;
+        fieldsC[slot] = c;
+    }
+
+    /**
+     * @return number of events in the buffer
+     */
+    public int size() {
+        return (int) Math.min(count, capacity);
+    }
+
+    public void clear() {
+        count = 0;
+    }
+
+    /**
+     * Append the events in the buffer, one per line from the oldest one, with their time in
+     * microseconds from the oldest one.
+     */
+    public void dump(StringBuilder builder) {
+        int size = size();
+        long first = count - size;
+        for (long i = first; i < count; i++) {
+            int slot = (int) (i & (capacity - 1));
+            int type = types[slot];
+            builder.append((timestamps[slot] - timestamps[(int) (first & (capacity - 1))]) / 1000)
+                    .append("us ")
+                    .append(EVENT_NAMES[type])
+                    .append(' ')
+                    .append(fieldsA[slot]);
+            if (type == MOVE) {
+                builder.append(' ').append(Direction.fromOrdinal(fieldsB[slot]).name());
+            } else {
+                builder.append(' ').append(fieldsB[slot]);
+            }
+            builder.append(' ').append(fieldsC[slot]).append('\n');
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        dump(builder);
+        return builder.toString();
+    }
+}
@@ -0,0 +1,24 @@
+package selantoapps.roundyinflatworld.utils;
+
+import java.util.Random;
+
+/**
+ * A {@link RandomSource} backed by {@link Random}.
+ */
+public class JavaRandomSource implements RandomSource {
+
+    private final Random random;
+
+    public JavaRandomSource() {
+        this(new Random());
+    }
+
+    public JavaRandomSource(Random random) {
+        this.random = random;
+    }
+
+    @Override
+    public int nextInt(int bound) {
+        return random.nextInt(bound);
+    }
+}
@@ -0,0 +1,101 @@
+package selantoapps.roundyinflatworld.utils;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Named latency histograms and counters of the game, shared by whoever records them: the rules in
+ * core, the app, or a headless run.
+ * <p>
+ * Histograms and counters are created the first time they are asked for, recording on them is
+ * lock-free.
+ */
+public class MetricsRegistry {
+
+    // latencies, in nanoseconds
+    public static final String FIND_UNHAPPY_ROUNDIES = "flatworld.findUnhappyRoundies";
+    public static final String MARK_COLLISIONS = "collisionDetector.markCollisions";
+    public static final String CLICK = "flatworld.click";
+    public static final String CLICK_HANDLING = "gameEngine.click";
+    public static final String CHAIN_ANIMATION = "animator.chain";
+
+    // values
+    public static final String CHAIN_LENGTH = "chain.length";
+
+    // counters
+    public static final String COLLISIONS_FOUND = "collisions.found";
+    public static final String DEATHS = "deaths";
+
+    private final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<>();
+
+    public LatencyHistogram histogram(String name) {
+        LatencyHistogram histogram = histograms.get(name);
+        if (histogram == null) {
+            LatencyHistogram newHistogram = new LatencyHistogram();
+            histogram = histograms.putIfAbsent(name, newHistogram);
+            if (histogram == null) {
+                histogram = newHistogram;
+            }
+        }
+        return histogram;
+    }
+
+    public AtomicLong counter(String name) {
+        AtomicLong counter = counters.get(name);
+        if (counter == null) {
+            AtomicLong newCounter = new AtomicLong();
+            counter = counters.putIfAbsent(name, newCounter);
+            if (counter == null) {
+                counter = newCounter;
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * @return a snapshot of each histogram, sorted by name
+     */
+    public Map<String, LatencyHistogram.Snapshot> snapshotHistograms() {
+        Map<String, LatencyHistogram.Snapshot> snapshots = new TreeMap<>();
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            snapshots.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return snapshots;
+    }
+
+    /**
+     * @return the value of each counter, sorted by name
+     */
+    public Map<String, Long> snapshotCounters() {
+        Map<String, Long> values = new TreeMap<>();
+        for (Map.Entry<String, AtomicLong> entry : counters.entrySet()) {
+            values.put(entry.getKey(), entry.getValue().get());
+        }
+        return values;
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+        for (AtomicLong counter : counters.values()) {
+            counter.set(0);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, LatencyHistogram.Snapshot> entry : snapshotHistograms().entrySet()) {
+            builder.append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+        }
+        for (Map.Entry<String, Long> entry : snapshotCounters().entrySet()) {
+            builder.append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+        }
+        return builder.toString();
+    }
+}
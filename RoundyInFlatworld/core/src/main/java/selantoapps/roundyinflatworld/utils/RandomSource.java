@@ -0,0 +1,16 @@
+package selantoapps.roundyinflatworld.utils;
+
+/**
+ * Source of the random choices of the game: where roundies are placed and which collision a
+ * clicked roundy goes for.
+ * <p>
+ * Implementations do not need to be thread safe: each game uses its own source.
+ */
+public interface RandomSource {
+
+    /**
+     * @param bound upper bound, must be positive
+     * @return a pseudorandom int uniformly distributed between 0 (inclusive) and bound (exclusive)
+     */
+    int nextInt(int bound);
+}
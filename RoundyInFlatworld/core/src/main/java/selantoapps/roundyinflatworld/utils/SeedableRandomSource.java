@@ -0,0 +1,12 @@
+package selantoapps.roundyinflatworld.utils;
+
+/**
+ * A {@link RandomSource} whose whole state fits in a long, so that it can be saved and restored
+ * to replay the same random choices.
+ */
+public interface SeedableRandomSource extends RandomSource {
+
+    long getState();
+
+    void setState(long state);
+}
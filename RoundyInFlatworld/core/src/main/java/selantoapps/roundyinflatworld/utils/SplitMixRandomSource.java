@@ -0,0 +1,59 @@
+package selantoapps.roundyinflatworld.utils;
+
+/**
+ * A {@link SeedableRandomSource} implementing SplitMix64, the generator behind
+ * java.util.SplittableRandom: a 64-bit counter scrambled on each draw.
+ */
+public class SplitMixRandomSource implements SeedableRandomSource {
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private long state;
+
+    public SplitMixRandomSource() {
+        this(System.nanoTime());
+    }
+
+    public SplitMixRandomSource(long seed) {
+        state = seed;
+    }
+
+    @Override
+    public long getState() {
+        return state;
+    }
+
+    @Override
+    public void setState(long state) {
+        this.state = state;
+    }
+
+    private long nextLong() {
+        long z = state += GOLDEN_GAMMA;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Same algorithm as {@link java.util.Random#nextInt(int)}, drawing 31 bits at a time and
+     * rejecting the draws which would make some values more likely than others.
+     */
+    @Override
+    public int nextInt(int bound) {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("bound must be positive: " + bound);
+        }
+        int bits = (int) (nextLong() >>> 33);
+        int mask = bound - 1;
+        if ((bound & mask) == 0) {
+            return (int) ((bound * (long) bits) >> 31);
+        }
+        int value = bits % bound;
+        while (bits - value + mask < 0) {
+            bits = (int) (nextLong() >>> 33);
+            value = bits % bound;
+        }
+        return value;
+    }
+}
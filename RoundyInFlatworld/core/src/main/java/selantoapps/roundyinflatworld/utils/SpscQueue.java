@@ -0,0 +1,110 @@
+package selantoapps.roundyinflatworld.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded lock-free queue for exactly one producer thread and one consumer thread.
+ * <p>
+ * The elements live in a ring buffer. The producer only writes the tail and the consumer only
+ * writes the head, each one publishing its own counter with an ordered store, so neither
+ * {@link #offer(Object)} nor {@link #poll()} ever locks, waits or allocates. Each side also keeps
+ * the last counter it read from the other side, and reads it again only when the queue looks
+ * full or empty.
+ * <p>
+ * Calling {@link #offer(Object)} from more than one thread, or {@link #poll()} from more than one
+ * thread, corrupts the queue.
+ *
+ * @param <E> type of the elements
+ */
+public final class SpscQueue<E> {
+
+    private final Object[] buffer;
+
+    private final int mask;
+
+    // index of the next element to poll, written only by the consumer
+    private final AtomicLong head = new AtomicLong();
+
+    // index of the next element to offer, written only by the producer
+    private final AtomicLong tail = new AtomicLong();
+
+    // last head read by the producer
+    private long headCache;
+
+    // last tail read by the consumer
+    private long tailCache;
+
+    /**
+     * @param capacity maximum number of elements in the queue, rounded up to a power of 2
+     */
+    public SpscQueue(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        buffer = new Object[size];
+        mask = size - 1;
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+
+    /**
+     * Called by the producer only.
+     *
+     * @return false if the queue is full
+     */
+    public boolean offer(E element) {
+        if (element == null) {
+            throw new NullPointerException();
+        }
+        long currentTail = tail.get();
+        if (currentTail - headCache >= buffer.length) {
+            headCache = head.get();
+            if (currentTail - headCache >= buffer.length) {
+                return false;
+            }
+        }
+        buffer[(int) currentTail & mask] = element;
+        // the element is visible to the consumer before the new tail
+        tail.lazySet(currentTail + 1);
+        return true;
+    }
+
+    /**
+     * Called by the consumer only.
+     *
+     * @return the oldest element, null if the queue is empty
+     */
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long currentHead = head.get();
+        if (currentHead >= tailCache) {
+            tailCache = tail.get();
+            if (currentHead >= tailCache) {
+                return null;
+            }
+        }
+        int index = (int) currentHead & mask;
+        E element = (E) buffer[index];
+        buffer[index] = null;
+        head.lazySet(currentHead + 1);
+        return element;
+    }
+
+    /**
+     * @return the number of elements in the queue when called, exact only for the side which is
+     * not moving
+     */
+    public int size() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+}
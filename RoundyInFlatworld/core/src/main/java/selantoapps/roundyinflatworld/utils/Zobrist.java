@@ -0,0 +1,40 @@
+package selantoapps.roundyinflatworld.utils;
+
+/**
+ * Zobrist hashing of the boards of Flatworld: each cell, and each roundy in each cell, gets a
+ * random-looking 64-bit value, and a board hashes to the xor of the values of what is on it.
+ * Placing, moving or removing a roundy then updates the hash in constant time, xoring out the
+ * values it leaves and in the ones it takes.
+ * <p>
+ * The values are not kept in tables but computed by the finalizer of SplitMix64, which scrambles
+ * distinct inputs into distinct values: they cost nothing to keep whatever the size of the grid,
+ * and are the same from one run to the next.
+ */
+public final class Zobrist {
+
+    private static final long CELL_SALT = 0x5DEECE66DL;
+    private static final long ROUNDY_SALT = 0x9E3779B97F4A7C15L;
+
+    private Zobrist() {
+    }
+
+    /**
+     * @return value of an occupied cell, whoever occupies it
+     */
+    public static long cell(int cellIndex) {
+        return mix(cellIndex ^ CELL_SALT);
+    }
+
+    /**
+     * @return value of the roundy id in the cell
+     */
+    public static long roundy(int id, int cellIndex) {
+        return mix((((long) id << 32) | (cellIndex & 0xffffffffL)) ^ ROUNDY_SALT);
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,79 @@
+package selantoapps.roundyinflatworld.controller;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import selantoapps.roundyinflatworld.utils.SplitMixRandomSource;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * In allocation-free mode clicking and adding the dead roundies back must not allocate, once the
+ * recycled roundies and chain exist.
+ */
+public class FlatworldAllocationTest {
+
+    private static final int WARM_UP_ITERATIONS = 200000;
+    private static final int ITERATIONS = 100000;
+    private static final int ROUNDS = 5;
+
+    @Test
+    public void steadyStateDoesNotAllocate() {
+        // bitboard and line-indexed detectors
+        checkNoAllocation(8, 12);
+        checkNoAllocation(12, 30);
+    }
+
+    private static void checkNoAllocation(int gridSize, int roundyCount) {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+
+        Flatworld flatworld = new Flatworld(gridSize, roundyCount, new SplitMixRandomSource(7));
+        flatworld.setAllocationFree(true);
+        flatworld.init();
+        for (int id = 0; id < roundyCount; id++) {
+            flatworld.placeRoundy(id);
+        }
+        flatworld.findUnhappyRoundies();
+        play(flatworld, WARM_UP_ITERATIONS);
+
+        // what reading the counter costs on its own, if anything
+        long start = threads.getThreadAllocatedBytes(threadId);
+        long overhead = threads.getThreadAllocatedBytes(threadId) - start;
+
+        // the virtual machine itself can allocate now and then in this thread, while it compiles
+        // the code, so a round is played again if it allocated: a click which allocates would
+        // allocate in every round
+        long allocated = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            start = threads.getThreadAllocatedBytes(threadId);
+            play(flatworld, ITERATIONS);
+            allocated = threads.getThreadAllocatedBytes(threadId) - start - overhead;
+            if (allocated == 0) {
+                break;
+            }
+        }
+        assertEquals("bytes allocated on a " + gridSize + "x" + gridSize + " grid", 0, allocated);
+    }
+
+    /**
+     * Click the roundies in turn, adding back each dead one when its turn comes.
+     */
+    private static void play(Flatworld flatworld, int iterations) {
+        int roundyCount = flatworld.getRoundyCount();
+        for (int i = 0; i < iterations; i++) {
+            int id = i % roundyCount;
+            if (flatworld.getRoundy(id) == null) {
+                flatworld.addRoundy(id);
+            } else {
+                flatworld.click(id);
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package selantoapps.roundyinflatworld.controller;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import selantoapps.roundyinflatworld.model.Chain;
+import selantoapps.roundyinflatworld.model.Roundy;
+import selantoapps.roundyinflatworld.utils.SplitMixRandomSource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The incremental collisions must leave every roundy as happy as a full recompute after each death.
+ */
+public class FlatworldHappinessTest {
+
+    private static final int STEPS = 60;
+
+    @Test
+    public void addedRoundyWithoutCollisionsBecomesHappy() {
+        for (boolean incremental : new boolean[]{true, false}) {
+            Flatworld flatworld = new Flatworld(8, 3, new SplitMixRandomSource(1));
+            flatworld.setIncrementalCollisions(incremental);
+            flatworld.init();
+            flatworld.addRoundy(0, 0);
+            flatworld.addRoundy(1, 1);
+            flatworld.addRoundy(2, 43);
+            flatworld.click(0);
+
+            assertTrue("incremental " + incremental, flatworld.getRoundy(2).isHappy());
+        }
+    }
+
+    @Test
+    public void bothModesGiveTheSameHappiness() {
+        for (int gridSize : new int[]{5, 8, 12, 40}) {
+            for (long seed = 0; seed < 100; seed++) {
+                checkSameHappiness(Flatworld.createCollisionDetector(gridSize), gridSize, seed);
+                checkSameHappiness(new SparseCollisionDetector(gridSize), gridSize, seed);
+            }
+        }
+    }
+
+    /**
+     * Play the same random sequence of clicks and additions of dead roundies on two boards, one
+     * with incremental collisions and one with a full recompute after each death.
+     */
+    private static void checkSameHappiness(CollisionDetector collisionDetector, int gridSize, long seed) {
+        int roundyCount = gridSize * gridSize / 4;
+        Flatworld incremental = new Flatworld(collisionDetector, gridSize, roundyCount, new SplitMixRandomSource(seed));
+        Flatworld full = new Flatworld(gridSize, roundyCount, new SplitMixRandomSource(seed));
+        full.setIncrementalCollisions(false);
+        incremental.init();
+        full.init();
+        for (int id = 0; id < roundyCount; id++) {
+            full.placeRoundy(id, incremental.placeRoundy(id).getCellIndex());
+        }
+        incremental.findUnhappyRoundies();
+        full.findUnhappyRoundies();
+
+        Random random = new Random(seed);
+        for (int step = 0; step < STEPS; step++) {
+            int id = random.nextInt(roundyCount);
+            Roundy roundy = incremental.getRoundy(id);
+            if (roundy == null) {
+                full.addRoundy(id, incremental.addRoundy(id).getCellIndex());
+                continue;
+            }
+            Chain chain = incremental.click(id);
+            if (chain == null) {
+                assertNull(full.click(id));
+                continue;
+            }
+            full.click(id, chain.getDirection());
+
+            for (int k = 0; k < roundyCount; k++) {
+                Roundy expected = full.getRoundy(k);
+                Roundy actual = incremental.getRoundy(k);
+                String message = "grid " + gridSize + " seed " + seed + " step " + step + " roundy " + k;
+                assertEquals(message, expected == null, actual == null);
+                if (expected != null) {
+                    assertEquals(message, expected.isHappy(), actual.isHappy());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package selantoapps.roundyinflatworld.controller;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import selantoapps.roundyinflatworld.settings.Direction;
+import selantoapps.roundyinflatworld.utils.SplitMixRandomSource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class FlatworldSnapshotTest {
+
+    private static final int GRID_SIZE = 5;
+    private static final int ROUNDY_COUNT = 2;
+
+    // magic, version, flags, user flags, grid size, roundy count, random state
+    private static final int HEADER_SIZE = 4 + 2 + 1 + 4 + 4 + 4 + 8;
+    private static final int FREE_CELLS_OFFSET = HEADER_SIZE + ROUNDY_COUNT * 4;
+    // free cells and happiness
+    private static final int DIRECTIONS_OFFSET = FREE_CELLS_OFFSET + (GRID_SIZE * GRID_SIZE - ROUNDY_COUNT) * 4
+            + ROUNDY_COUNT;
+    // mask of the directions of roundy 0
+    private static final int CLOSEST_ID_OFFSET = DIRECTIONS_OFFSET + 1;
+
+    @Test
+    public void restoresTheCollisions() {
+        Flatworld flatworld = newFlatworld();
+        byte[] snapshot = FlatworldSnapshot.save(flatworld, 0);
+
+        Flatworld restored = new Flatworld(GRID_SIZE, ROUNDY_COUNT, new SplitMixRandomSource());
+        FlatworldSnapshot.restore(restored, snapshot);
+
+        assertEquals(1, restored.getRoundy(0).getClosestId(Direction.EAST));
+        assertEquals(1, restored.getRoundy(0).getClosestDistance(Direction.EAST));
+        assertEquals(1, restored.getRoundy(0).getCollisionCount(Direction.EAST));
+        assertEquals(flatworld.getHash(), restored.getHash());
+    }
+
+    @Test
+    public void rejectsInvalidCollisions() {
+        byte[] snapshot = FlatworldSnapshot.save(newFlatworld(), 0);
+        ByteBuffer buffer = ByteBuffer.wrap(snapshot);
+        assertEquals(1, buffer.getInt(CLOSEST_ID_OFFSET));
+
+        int[][] invalidCollisions = {
+                {ROUNDY_COUNT, 1, 1}, // id out of range
+                {-1, 1, 1},
+                {0, 1, 1}, // itself
+                {1, 2, 1}, // not that far
+                {1, 0, 1},
+                {1, 1, 0}, // no roundies
+                {1, 1, GRID_SIZE}, // more roundies than the line holds
+        };
+        for (int[] collisions : invalidCollisions) {
+            byte[] corrupted = snapshot.clone();
+            ByteBuffer.wrap(corrupted).putInt(CLOSEST_ID_OFFSET, collisions[0])
+                    .putInt(CLOSEST_ID_OFFSET + 4, collisions[1])
+                    .putInt(CLOSEST_ID_OFFSET + 8, collisions[2]);
+            checkRejected(corrupted, false, "closest " + collisions[0] + ", distance " + collisions[1]
+                    + ", count " + collisions[2]);
+        }
+    }
+
+    @Test
+    public void validationRejectsCollisionsNotOnTheBoard() {
+        byte[] snapshot = FlatworldSnapshot.save(newFlatworld(), 0);
+
+        // roundy 1 is the only one east of roundy 0
+        byte[] wrongCount = snapshot.clone();
+        ByteBuffer.wrap(wrongCount).putInt(CLOSEST_ID_OFFSET + 8, 2);
+        FlatworldSnapshot.restore(new Flatworld(GRID_SIZE, ROUNDY_COUNT, new SplitMixRandomSource()), wrongCount);
+        checkRejected(wrongCount, true, "count 2");
+
+        // the collision of roundy 0 towards east left out
+        byte[] missing = new byte[snapshot.length - 12];
+        System.arraycopy(snapshot, 0, missing, 0, DIRECTIONS_OFFSET);
+        missing[DIRECTIONS_OFFSET] = 0;
+        System.arraycopy(snapshot, CLOSEST_ID_OFFSET + 12, missing, CLOSEST_ID_OFFSET,
+                snapshot.length - CLOSEST_ID_OFFSET - 12);
+        FlatworldSnapshot.restore(new Flatworld(GRID_SIZE, ROUNDY_COUNT, new SplitMixRandomSource()), missing);
+        checkRejected(missing, true, "no collision towards east");
+
+        FlatworldSnapshot.restore(new Flatworld(GRID_SIZE, ROUNDY_COUNT, new SplitMixRandomSource()), snapshot, true);
+    }
+
+    @Test
+    public void rejectsInvalidFreeCells() {
+        byte[] snapshot = FlatworldSnapshot.save(newFlatworld(), 0);
+
+        byte[] duplicate = snapshot.clone();
+        ByteBuffer.wrap(duplicate).putInt(FREE_CELLS_OFFSET + 4, ByteBuffer.wrap(snapshot).getInt(FREE_CELLS_OFFSET));
+        checkRejected(duplicate, false, "a free cell twice");
+
+        byte[] occupied = snapshot.clone();
+        ByteBuffer.wrap(occupied).putInt(FREE_CELLS_OFFSET, 0);
+        checkRejected(occupied, false, "the cell of roundy 0 as free");
+
+        byte[] outOfGrid = snapshot.clone();
+        ByteBuffer.wrap(outOfGrid).putInt(FREE_CELLS_OFFSET, GRID_SIZE * GRID_SIZE);
+        checkRejected(outOfGrid, false, "a free cell out of the grid");
+    }
+
+    private static void checkRejected(byte[] snapshot, boolean validate, String corruption) {
+        try {
+            FlatworldSnapshot.restore(new Flatworld(GRID_SIZE, ROUNDY_COUNT, new SplitMixRandomSource()), snapshot,
+                    validate);
+            fail("restored " + corruption);
+        } catch (IllegalArgumentException expected) {
+            // the snapshot is rejected
+        }
+    }
+
+    /**
+     * Roundy 0 in the top left cell with roundy 1 next to it, the only collision of roundy 0.
+     */
+    private static Flatworld newFlatworld() {
+        Flatworld flatworld = new Flatworld(GRID_SIZE, ROUNDY_COUNT, new SplitMixRandomSource(3));
+        flatworld.init();
+        flatworld.placeRoundy(0, 0);
+        flatworld.placeRoundy(1, 1);
+        flatworld.findUnhappyRoundies();
+        return flatworld;
+    }
+}
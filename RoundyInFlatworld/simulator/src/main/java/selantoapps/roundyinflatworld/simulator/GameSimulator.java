@@ -0,0 +1,118 @@
+package selantoapps.roundyinflatworld.simulator;
+
+import selantoapps.roundyinflatworld.controller.Flatworld;
+import selantoapps.roundyinflatworld.model.Chain;
+import selantoapps.roundyinflatworld.model.Roundy;
+import selantoapps.roundyinflatworld.utils.MetricsRegistry;
+import selantoapps.roundyinflatworld.utils.RandomSource;
+
+/**
+ * Plays games of Flatworld on a single thread, with the rules of the app: all the roundies but
+ * one are placed at random, the last one is added, then a player clicks at random on the roundies
+ * still in the grid until none of them is unhappy.
+ */
+public class GameSimulator {
+
+    // from here on, halving the memory of the roundies is worth reading them about 10% slower
+    private static final int COMPACT_ROUNDY_COUNT = 1 << 16;
+
+    public static class Settings {
+        final int gridSize;
+        final int roundyCount;
+        final int maxClicks;
+        final MetricsRegistry metrics;
+
+        /**
+         * @param gridSize    size of the side of the grid
+         * @param roundyCount number of roundies in each game
+         * @param maxClicks   clicks after which a game is given up
+         * @param metrics     registry shared by all the games to record their latencies, null for
+         *                    none
+         */
+        public Settings(int gridSize, int roundyCount, int maxClicks, MetricsRegistry metrics) {
+            this.gridSize = gridSize;
+            this.roundyCount = roundyCount;
+            this.maxClicks = maxClicks;
+            this.metrics = metrics;
+        }
+    }
+
+    private final Settings settings;
+    private final RandomSource random;
+    private final Flatworld flatworld;
+    private final GameStatistics statistics;
+
+    // ids of the roundies still in the grid, in the first aliveCount slots
+    private final int[] aliveIds;
+    private int aliveCount;
+
+    public GameSimulator(Settings settings, RandomSource random) {
+        this.settings = settings;
+        this.random = random;
+        flatworld = new Flatworld(settings.gridSize, settings.roundyCount, random);
+        flatworld.setMetricsRegistry(settings.metrics);
+        // each chain is read before the next click
+        flatworld.setAllocationFree(true);
+        // roundies are only read through the world, so the large games can keep them compact
+        flatworld.setCompactRoundies(settings.roundyCount >= COMPACT_ROUNDY_COUNT);
+        statistics = new GameStatistics(settings.roundyCount, settings.maxClicks);
+        aliveIds = new int[settings.roundyCount];
+    }
+
+    public GameStatistics play(long games) {
+        for (long game = 0; game < games; game++) {
+            playGame();
+        }
+        return statistics;
+    }
+
+    private void playGame() {
+        int roundyCount = settings.roundyCount;
+        flatworld.init();
+        for (int id = 0; id < roundyCount - 1; id++) {
+            flatworld.placeRoundy(id);
+        }
+        flatworld.addRoundy(roundyCount - 1);
+        for (int id = 0; id < roundyCount; id++) {
+            aliveIds[id] = id;
+        }
+        aliveCount = roundyCount;
+
+        int clicks = 0;
+        while (hasUnhappyRoundies()) {
+            if (clicks == settings.maxClicks) {
+                statistics.addUnfinishedGame();
+                return;
+            }
+            clicks++;
+
+            Chain chain = flatworld.click(aliveIds[random.nextInt(aliveCount)]);
+            if (chain == null) {
+                statistics.addClick(0);
+            } else {
+                statistics.addClick(chain.getLength());
+                removeAlive(chain.getDeadRoundyId());
+            }
+        }
+        statistics.addGame(clicks, aliveCount);
+    }
+
+    private boolean hasUnhappyRoundies() {
+        for (int i = 0; i < aliveCount; i++) {
+            Roundy roundy = flatworld.getRoundy(aliveIds[i]);
+            if (roundy.hasCollisions()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void removeAlive(int id) {
+        for (int i = 0; i < aliveCount; i++) {
+            if (aliveIds[i] == id) {
+                aliveIds[i] = aliveIds[--aliveCount];
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package selantoapps.roundyinflatworld.simulator;
+
+import java.util.Locale;
+
+/**
+ * Statistics of a batch of games, filled by a single worker and then merged with the ones of the
+ * other workers. Merging only sums counters, so the result does not depend on the order in which
+ * workers complete.
+ */
+public class GameStatistics {
+
+    private long games;
+
+    // games stopped before all the roundies were happy
+    private long unfinishedGames;
+
+    private long clicks;
+
+    // clicks on roundies which could not hit anybody
+    private long idleClicks;
+
+    private long deaths;
+
+    // number of chains by length, a chain is at least 2 roundies long
+    private final long[] chainLengths;
+
+    // number of finished games by number of clicks until no roundy is unhappy, the last slot
+    // counting all the longer games
+    private final long[] clicksUntilHappy;
+
+    // number of finished games by number of roundies still in the grid
+    private final long[] survivors;
+
+    public GameStatistics(int roundyCount, int maxClicks) {
+        chainLengths = new long[roundyCount + 1];
+        clicksUntilHappy = new long[Math.min(maxClicks, roundyCount * 4) + 2];
+        survivors = new long[roundyCount + 1];
+    }
+
+    public void addClick(int chainLength) {
+        clicks++;
+        if (chainLength == 0) {
+            idleClicks++;
+        } else {
+            deaths++;
+            chainLengths[chainLength]++;
+        }
+    }
+
+    public void addGame(int clicks, int survivorCount) {
+        games++;
+        clicksUntilHappy[Math.min(clicks, clicksUntilHappy.length - 1)]++;
+        survivors[survivorCount]++;
+    }
+
+    public void addUnfinishedGame() {
+        games++;
+        unfinishedGames++;
+    }
+
+    public void merge(GameStatistics other) {
+        games += other.games;
+        unfinishedGames += other.unfinishedGames;
+        clicks += other.clicks;
+        idleClicks += other.idleClicks;
+        deaths += other.deaths;
+        add(chainLengths, other.chainLengths);
+        add(clicksUntilHappy, other.clicksUntilHappy);
+        add(survivors, other.survivors);
+    }
+
+    private static void add(long[] counters, long[] otherCounters) {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] += otherCounters[i];
+        }
+    }
+
+    public long getGames() {
+        return games;
+    }
+
+    public long getClicks() {
+        return clicks;
+    }
+
+    public long getDeaths() {
+        return deaths;
+    }
+
+    public double getDeathsPerClick() {
+        return clicks == 0 ? 0 : (double) deaths / clicks;
+    }
+
+    public double getMeanChainLength() {
+        long weightedSum = 0;
+        for (int length = 0; length < chainLengths.length; length++) {
+            weightedSum += length * chainLengths[length];
+        }
+        return deaths == 0 ? 0 : (double) weightedSum / deaths;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format(Locale.US, "games: %d (%d unfinished)%n", games, unfinishedGames));
+        builder.append(String.format(Locale.US, "clicks: %d (%d idle), deaths per click: %.4f%n",
+                clicks, idleClicks, getDeathsPerClick()));
+        builder.append(String.format(Locale.US, "mean chain length: %.4f%n", getMeanChainLength()));
+        appendDistribution(builder, "chain length", chainLengths, deaths, false);
+        appendDistribution(builder, "clicks until no roundy is unhappy", clicksUntilHappy,
+                games - unfinishedGames, true);
+        appendDistribution(builder, "roundies left", survivors, games - unfinishedGames, false);
+        return builder.toString();
+    }
+
+    private static void appendDistribution(StringBuilder builder, String name, long[] counters, long total,
+                                           boolean lastIsOpen) {
+        builder.append(name).append(':').append(String.format("%n"));
+        for (int i = 0; i < counters.length; i++) {
+            if (counters[i] > 0) {
+                boolean open = lastIsOpen && i == counters.length - 1;
+                builder.append(String.format(Locale.US, "  %4d%s %12d  %7.3f%%%n", i, open ? "+" : " ",
+                        counters[i], 100.0 * counters[i] / total));
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package selantoapps.roundyinflatworld.simulator;
+
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+import selantoapps.roundyinflatworld.utils.MetricsRegistry;
+
+/**
+ * Plays millions of random games of Flatworld on all the cores and prints their statistics.
+ * <p>
+ * Usage: MonteCarloSimulator [gridSize [roundyCount [games [seed [parallelism]]]]]
+ * <p>
+ * With -Dsimulator.metrics=true the latencies of the game are recorded and printed too.
+ */
+public class MonteCarloSimulator {
+
+    private static final int DEFAULT_GRID_SIZE = 8;
+    private static final int DEFAULT_ROUNDY_COUNT = 8;
+    private static final long DEFAULT_GAMES = 1000000;
+    private static final long DEFAULT_SEED = 42;
+
+    public static void main(String[] args) {
+        int gridSize = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_GRID_SIZE;
+        int roundyCount = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ROUNDY_COUNT;
+        long games = args.length > 2 ? Long.parseLong(args[2]) : DEFAULT_GAMES;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : DEFAULT_SEED;
+        int parallelism = args.length > 4 ? Integer.parseInt(args[4])
+                : Runtime.getRuntime().availableProcessors();
+
+        if (gridSize < 1 || roundyCount < 1 || roundyCount > (long) gridSize * gridSize) {
+            throw new IllegalArgumentException("Cannot place " + roundyCount + " roundies in a grid of "
+                    + gridSize + "x" + gridSize);
+        }
+
+        // every click on an unhappy roundy kills one, so a game rarely needs more than a few clicks
+        // per roundy: the limit only protects from pathological runs
+        MetricsRegistry metrics = Boolean.getBoolean("simulator.metrics") ? new MetricsRegistry() : null;
+        int maxClicks = (int) Math.min(Integer.MAX_VALUE, roundyCount * 1000L);
+        GameSimulator.Settings settings = new GameSimulator.Settings(gridSize, roundyCount, maxClicks, metrics);
+
+        long start = System.nanoTime();
+        GameStatistics statistics = simulate(settings, games, seed, parallelism);
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+        System.out.printf(Locale.US, "grid %dx%d, %d roundies, seed %d, %d workers%n", gridSize, gridSize,
+                roundyCount, seed, parallelism);
+        System.out.print(statistics);
+        System.out.printf(Locale.US, "%d ms, %.0f games/s%n", elapsedMillis,
+                games * 1000.0 / Math.max(1, elapsedMillis));
+        if (metrics != null) {
+            System.out.print(metrics);
+        }
+    }
+
+    /**
+     * @return the statistics of the games, always the same for the same seed whatever the
+     * parallelism
+     */
+    public static GameStatistics simulate(GameSimulator.Settings settings, long games, long seed,
+                                          int parallelism) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return pool.invoke(new SimulationTask(settings, new SplittableRandom(seed), games));
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
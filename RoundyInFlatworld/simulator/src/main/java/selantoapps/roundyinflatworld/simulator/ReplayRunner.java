@@ -0,0 +1,43 @@
+package selantoapps.roundyinflatworld.simulator;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+import selantoapps.roundyinflatworld.controller.ReplayPlayer;
+
+/**
+ * Plays again the games recorded by the app, checking that each one goes as it went on the
+ * device, e.g. after pulling them with
+ * adb shell run-as selantoapps.roundyinflatworld cat files/replays/1500000000000.rifr > game.rifr
+ * <p>
+ * Usage: ReplayRunner log...
+ * <p>
+ * Exits with status 1 at the first game which does not go as recorded.
+ */
+public class ReplayRunner {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: ReplayRunner log...");
+            System.exit(2);
+        }
+        for (String log : args) {
+            ReplayPlayer player;
+            long start = System.nanoTime();
+            try (FileChannel channel = FileChannel.open(Paths.get(log), StandardOpenOption.READ)) {
+                player = new ReplayPlayer(channel);
+                player.play();
+            } catch (IllegalStateException e) {
+                System.out.println(log + ": " + e.getMessage());
+                System.exit(1);
+                return;
+            }
+            long elapsedMicros = (System.nanoTime() - start) / 1000;
+            System.out.printf(Locale.US, "%s: %d games, %d clicks, %d states checked, %d us%n", log,
+                    player.getGameCount(), player.getClickCount(), player.getStateCount(), elapsedMicros);
+        }
+    }
+}
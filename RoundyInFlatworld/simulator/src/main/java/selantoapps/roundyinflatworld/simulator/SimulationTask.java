@@ -0,0 +1,43 @@
+package selantoapps.roundyinflatworld.simulator;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Plays a range of games, splitting it in halves until it is small enough for a single worker.
+ * <p>
+ * The random generator is split along with the range, so each batch of games gets the same
+ * generator whatever the number of workers and the order in which they run: the same seed always
+ * gives the same statistics.
+ */
+class SimulationTask extends RecursiveTask<GameStatistics> {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int GAMES_PER_BATCH = 4096;
+
+    private final GameSimulator.Settings settings;
+    private final SplittableRandom random;
+    private final long games;
+
+    SimulationTask(GameSimulator.Settings settings, SplittableRandom random, long games) {
+        this.settings = settings;
+        this.random = random;
+        this.games = games;
+    }
+
+    @Override
+    protected GameStatistics compute() {
+        if (games <= GAMES_PER_BATCH) {
+            return new GameSimulator(settings, new SplittableRandomSource(random)).play(games);
+        }
+
+        long half = games / 2;
+        SimulationTask first = new SimulationTask(settings, random.split(), half);
+        SimulationTask second = new SimulationTask(settings, random, games - half);
+        first.fork();
+        GameStatistics statistics = second.compute();
+        statistics.merge(first.join());
+        return statistics;
+    }
+}
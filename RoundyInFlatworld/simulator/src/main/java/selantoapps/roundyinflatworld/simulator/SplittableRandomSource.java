@@ -0,0 +1,22 @@
+package selantoapps.roundyinflatworld.simulator;
+
+import java.util.SplittableRandom;
+
+import selantoapps.roundyinflatworld.utils.RandomSource;
+
+/**
+ * A {@link RandomSource} backed by {@link SplittableRandom}, one for each worker of the simulation.
+ */
+public class SplittableRandomSource implements RandomSource {
+
+    private final SplittableRandom random;
+
+    public SplittableRandomSource(SplittableRandom random) {
+        this.random = random;
+    }
+
+    @Override
+    public int nextInt(int bound) {
+        return random.nextInt(bound);
+    }
+}
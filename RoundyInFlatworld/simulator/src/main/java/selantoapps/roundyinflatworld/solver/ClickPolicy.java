@@ -0,0 +1,81 @@
+package selantoapps.roundyinflatworld.solver;
+
+/**
+ * How the roundy clicked is chosen among the ones which can collide with somebody, in the games
+ * analyzed by an {@link OutcomeAnalyzer}. The direction it goes for is always the random choice of
+ * the game.
+ */
+public abstract class ClickPolicy {
+
+    /**
+     * @return a player clicking any roundy which can move with the same chance
+     */
+    public static ClickPolicy uniform() {
+        return new ClickPolicy() {
+            @Override
+            boolean isRandom() {
+                return true;
+            }
+
+            @Override
+            double score(double[] survival) {
+                return 0;
+            }
+
+            @Override
+            public String toString() {
+                return "uniform";
+            }
+        };
+    }
+
+    /**
+     * @return a player clicking, each time, the roundy which gives the roundy id the best chance
+     * to survive
+     */
+    public static ClickPolicy protect(final int id) {
+        return new ClickPolicy() {
+            @Override
+            double score(double[] survival) {
+                return survival[id];
+            }
+
+            @Override
+            public String toString() {
+                return "protect " + id;
+            }
+        };
+    }
+
+    /**
+     * @return a player clicking, each time, the roundy which gives the roundy id the worst chance
+     * to survive
+     */
+    public static ClickPolicy attack(final int id) {
+        return new ClickPolicy() {
+            @Override
+            double score(double[] survival) {
+                return -survival[id];
+            }
+
+            @Override
+            public String toString() {
+                return "attack " + id;
+            }
+        };
+    }
+
+    /**
+     * @return true if the roundy is chosen at random, false if the one with the highest
+     * {@link #score(double[])} is chosen
+     */
+    boolean isRandom() {
+        return false;
+    }
+
+    /**
+     * @param survival chance of each roundy to survive, by id, if a roundy is clicked
+     * @return how much the player likes clicking that roundy
+     */
+    abstract double score(double[] survival);
+}
@@ -0,0 +1,129 @@
+package selantoapps.roundyinflatworld.solver;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe map holding at most a fixed number of entries, evicting with the CLOCK algorithm: an
+ * entry read since the hand of the clock last passed over it gets a second chance, the first one
+ * found not read is replaced.
+ * <p>
+ * The entries are split in segments by hash, each one with its own lock and its own clock, so that
+ * threads working on different keys rarely wait for each other.
+ */
+final class ClockCache<K, V> {
+
+    private static final int SEGMENT_COUNT = 16;
+
+    private final Segment<K, V>[] segments;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * @param capacity maximum number of entries, at least one by segment
+     */
+    @SuppressWarnings("unchecked")
+    ClockCache(int capacity) {
+        segments = (Segment<K, V>[]) new Segment<?, ?>[SEGMENT_COUNT];
+        int segmentCapacity = Math.max(1, (capacity + SEGMENT_COUNT - 1) / SEGMENT_COUNT);
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment<>(segmentCapacity);
+        }
+    }
+
+    private Segment<K, V> segmentFor(Object key) {
+        int hash = key.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & (SEGMENT_COUNT - 1)];
+    }
+
+    /**
+     * @return the value of the key, null if not in the cache
+     */
+    V get(K key) {
+        V value = segmentFor(key).get(key);
+        (value == null ? missCount : hitCount).incrementAndGet();
+        return value;
+    }
+
+    void put(K key, V value) {
+        segmentFor(key).put(key, value);
+    }
+
+    long getHitCount() {
+        return hitCount.get();
+    }
+
+    long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return number of entries in the cache
+     */
+    int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    private static final class Segment<K, V> {
+
+        private final Map<K, Integer> slots;
+        private final Object[] keys;
+        private final Object[] values;
+        private final boolean[] referenced;
+        private int size;
+        private int hand;
+
+        Segment(int capacity) {
+            slots = new HashMap<>(capacity * 4 / 3 + 1);
+            keys = new Object[capacity];
+            values = new Object[capacity];
+            referenced = new boolean[capacity];
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized V get(K key) {
+            Integer slot = slots.get(key);
+            if (slot == null) {
+                return null;
+            }
+            referenced[slot] = true;
+            return (V) values[slot];
+        }
+
+        synchronized void put(K key, V value) {
+            Integer existing = slots.get(key);
+            if (existing != null) {
+                values[existing] = value;
+                referenced[existing] = true;
+                return;
+            }
+            int slot;
+            if (size < keys.length) {
+                slot = size++;
+            } else {
+                // entries read since the last turn are spared once
+                while (referenced[hand]) {
+                    referenced[hand] = false;
+                    hand = (hand + 1) % keys.length;
+                }
+                slot = hand;
+                hand = (hand + 1) % keys.length;
+                slots.remove(keys[slot]);
+            }
+            keys[slot] = key;
+            values[slot] = value;
+            referenced[slot] = false;
+            slots.put(key, slot);
+        }
+
+        synchronized int size() {
+            return size;
+        }
+    }
+}
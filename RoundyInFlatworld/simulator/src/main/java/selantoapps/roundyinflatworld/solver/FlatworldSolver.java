@@ -0,0 +1,295 @@
+package selantoapps.roundyinflatworld.solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import selantoapps.roundyinflatworld.controller.Flatworld;
+import selantoapps.roundyinflatworld.controller.FlatworldSnapshot;
+import selantoapps.roundyinflatworld.model.BoardKey;
+import selantoapps.roundyinflatworld.model.Chain;
+import selantoapps.roundyinflatworld.model.Roundy;
+import selantoapps.roundyinflatworld.settings.Direction;
+import selantoapps.roundyinflatworld.utils.JavaRandomSource;
+
+/**
+ * Finds the shortest sequence of clicks leaving no unhappy roundy in a board.
+ * <p>
+ * In the game the direction a clicked roundy goes for is chosen at random, here each direction is
+ * a separate {@link Move}: the solution is the shortest game a player can get with the best luck.
+ * Moves are applied by {@link Flatworld#click(int, Direction)}, so they follow the rules of the
+ * game exactly.
+ * <p>
+ * The search deepens one click at a time. At each depth the moves of the root are searched in
+ * parallel, sharing a transposition table of the boards already known to need more clicks than the
+ * ones left. Each click kills a roundy, so a board of n roundies never needs more than n - 1 clicks.
+ * <p>
+ * Usage: FlatworldSolver gridSize roundyCount [seed [parallelism]]
+ */
+public class FlatworldSolver {
+
+    static final int DIED = -1;
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final int gridSize;
+    private final int roundyCount;
+    private final int parallelism;
+
+    // boards which cannot be solved with fewer clicks than the value
+    private final ConcurrentMap<BoardKey, Integer> unsolvable = new ConcurrentHashMap<>();
+
+    public FlatworldSolver(int gridSize, int roundyCount, int parallelism) {
+        this.gridSize = gridSize;
+        this.roundyCount = roundyCount;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @param cellsById cell of each roundy, {@link #DIED} for the roundies not in the grid
+     * @return the shortest sequence of moves leaving no unhappy roundy, empty if none is unhappy
+     */
+    public List<Move> solve(int[] cellsById) throws InterruptedException {
+        Search rootSearch = new Search(new AtomicInteger());
+        List<Move> rootMoves = rootSearch.listMoves(cellsById);
+        if (rootMoves.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            for (int depth = 1; ; depth++) {
+                List<Move> solution = searchRoot(executor, cellsById, rootMoves, depth);
+                if (solution != null) {
+                    return solution;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return the solution starting with the first root move which solves the board in depth
+     * clicks, null if none does
+     */
+    private List<Move> searchRoot(ExecutorService executor, final int[] cellsById, List<Move> rootMoves,
+                                  final int depth) throws InterruptedException {
+        // root moves after the first one found solving the board can stop searching
+        final AtomicInteger solvedRootMove = new AtomicInteger(Integer.MAX_VALUE);
+
+        List<Future<Move[]>> futures = new ArrayList<>(rootMoves.size());
+        for (int i = 0; i < rootMoves.size(); i++) {
+            final int rootMove = i;
+            final Move move = rootMoves.get(i);
+            futures.add(executor.submit(new Callable<Move[]>() {
+                @Override
+                public Move[] call() {
+                    Search search = new Search(solvedRootMove, rootMove, depth);
+                    if (search.searchRootMove(cellsById, move, depth)) {
+                        solvedRootMove.accumulateAndGet(rootMove, Math::min);
+                        return search.getPath();
+                    }
+                    return null;
+                }
+            }));
+        }
+
+        List<Move> solution = null;
+        for (Future<Move[]> future : futures) {
+            try {
+                Move[] path = future.get();
+                if (path != null && solution == null) {
+                    solution = Arrays.asList(path);
+                }
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        return solution;
+    }
+
+    /**
+     * A depth-first search run by a single thread on its own Flatworld.
+     * <p>
+     * The world always holds the board of the node being searched: a move is clicked on it as it
+     * is, and the board is restored from a snapshot taken on entering the node before the next
+     * move, instead of being placed and marked again from its cells.
+     */
+    private class Search {
+
+        private final Flatworld flatworld = new Flatworld(gridSize, roundyCount, new JavaRandomSource());
+        private final AtomicInteger solvedRootMove;
+        private final int rootMove;
+        private final int[] pathIds;
+        private final Direction[] pathDirections;
+        private final int[] cellsById = new int[roundyCount];
+
+        Search(AtomicInteger solvedRootMove) {
+            this(solvedRootMove, 0, 0);
+        }
+
+        Search(AtomicInteger solvedRootMove, int rootMove, int depth) {
+            this.solvedRootMove = solvedRootMove;
+            this.rootMove = rootMove;
+            pathIds = new int[depth];
+            pathDirections = new Direction[depth];
+            // boards are restored again and again
+            flatworld.setAllocationFree(true);
+        }
+
+        /**
+         * @param depth clicks left, including the move
+         * @return true if the board is solved by the move and at most depth - 1 more clicks
+         */
+        boolean searchRootMove(int[] cellsById, Move move, int depth) {
+            load(cellsById);
+            return searchMove(move.getRoundyId(), move.getDirection(), depth, 0);
+        }
+
+        /**
+         * @param depth clicks left, including the move
+         * @param ply   index of the move in the path
+         * @return true if the board of the world is solved by the move and at most depth - 1 more
+         * clicks
+         */
+        private boolean searchMove(int id, Direction direction, int depth, int ply) {
+            flatworld.click(id, direction);
+            pathIds[ply] = id;
+            pathDirections[ply] = direction;
+            return search(depth - 1, ply + 1);
+        }
+
+        /**
+         * @return true if the board of the world is solved in at most depth clicks
+         */
+        private boolean search(int depth, int ply) {
+            if (!hasMoves()) {
+                return true;
+            }
+            if (depth == 0 || solvedRootMove.get() < rootMove) {
+                return false;
+            }
+
+            BoardKey key = BoardKey.occupancyOf(readCells());
+            Integer unsolvableDepth = unsolvable.get(key);
+            if (unsolvableDepth != null && unsolvableDepth >= depth) {
+                return false;
+            }
+
+            // the moves are read from the board restored after each one, in the order of listMoves
+            byte[] snapshot = FlatworldSnapshot.save(flatworld, 0);
+            boolean restored = true;
+            for (int id = 0; id < roundyCount; id++) {
+                for (Direction direction : DIRECTIONS) {
+                    if (!restored) {
+                        FlatworldSnapshot.restore(flatworld, snapshot);
+                        restored = true;
+                    }
+                    Roundy roundy = flatworld.getRoundy(id);
+                    if (roundy != null && roundy.hasCollisionTowards(direction)) {
+                        if (searchMove(id, direction, depth, ply)) {
+                            return true;
+                        }
+                        restored = false;
+                    }
+                }
+            }
+            if (solvedRootMove.get() >= rootMove) {
+                // not proven when the search was cut short
+                unsolvable.merge(key, depth, Math::max);
+            }
+            return false;
+        }
+
+        /**
+         * @return the moves available in the board, empty when no roundy is unhappy
+         */
+        List<Move> listMoves(int[] cellsById) {
+            load(cellsById);
+            List<Move> moves = new ArrayList<>();
+            for (Roundy roundy : flatworld.getRoundies()) {
+                if (roundy != null && roundy.hasCollisions()) {
+                    for (Direction direction : DIRECTIONS) {
+                        if (roundy.hasCollisionTowards(direction)) {
+                            moves.add(new Move(roundy.getId(), direction));
+                        }
+                    }
+                }
+            }
+            return moves;
+        }
+
+        /**
+         * @return the moves clicked to reach the board of the world
+         */
+        Move[] getPath() {
+            Move[] path = new Move[pathIds.length];
+            for (int ply = 0; ply < path.length; ply++) {
+                path[ply] = new Move(pathIds[ply], pathDirections[ply]);
+            }
+            return path;
+        }
+
+        private boolean hasMoves() {
+            for (Roundy roundy : flatworld.getRoundies()) {
+                if (roundy != null && roundy.hasCollisions()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void load(int[] cellsById) {
+            flatworld.init();
+            for (int id = 0; id < cellsById.length; id++) {
+                if (cellsById[id] != DIED) {
+                    flatworld.placeRoundy(id, cellsById[id]);
+                }
+            }
+            flatworld.findUnhappyRoundies();
+        }
+
+        /**
+         * @return the cell of each roundy in the world, in an array overwritten by the next call
+         */
+        private int[] readCells() {
+            for (int id = 0; id < roundyCount; id++) {
+                Roundy roundy = flatworld.getRoundy(id);
+                cellsById[id] = roundy == null ? DIED : roundy.getCellIndex();
+            }
+            return cellsById;
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int gridSize = Integer.parseInt(args[0]);
+        int roundyCount = Integer.parseInt(args[1]);
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : System.nanoTime();
+        int parallelism = args.length > 3 ? Integer.parseInt(args[3])
+                : Runtime.getRuntime().availableProcessors();
+
+        // a random board, placed as the game does
+        Flatworld flatworld = new Flatworld(gridSize, roundyCount, new JavaRandomSource(new java.util.Random(seed)));
+        flatworld.init();
+        int[] cellsById = new int[roundyCount];
+        for (int id = 0; id < roundyCount; id++) {
+            cellsById[id] = flatworld.placeRoundy(id).getCellIndex();
+        }
+        System.out.println("board " + gridSize + "x" + gridSize + ", seed " + seed + ", cells "
+                + Arrays.toString(cellsById));
+
+        long start = System.nanoTime();
+        List<Move> solution = new FlatworldSolver(gridSize, roundyCount, parallelism).solve(cellsById);
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+        System.out.println(solution.size() + " clicks " + solution + " in " + elapsedMillis + " ms");
+    }
+}
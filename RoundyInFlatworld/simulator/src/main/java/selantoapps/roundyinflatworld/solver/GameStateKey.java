@@ -0,0 +1,73 @@
+package selantoapps.roundyinflatworld.solver;
+
+import java.util.Arrays;
+
+import selantoapps.roundyinflatworld.model.BoardKey;
+
+/**
+ * Immutable key of a game in progress: the cell of each roundy by id and the clicks left.
+ * <p>
+ * Unlike a {@link BoardKey} it holds the clicks left too, and the cell of each id so that the
+ * key of a game is built without sorting, since it is built at each node of the search. Each
+ * cell takes as many bytes as the number of cells of the grid needs: one up to 255 cells, two up
+ * to 65535 and so on, 0 meaning dead.
+ */
+final class GameStateKey {
+
+    private final byte[] cells;
+
+    private final int clicksLeft;
+
+    private final int hash;
+
+    private GameStateKey(byte[] cells, int clicksLeft) {
+        this.cells = cells;
+        this.clicksLeft = clicksLeft;
+        hash = Arrays.hashCode(cells) * 31 + clicksLeft;
+    }
+
+    /**
+     * @param cellsById cell of each roundy, {@link FlatworldSolver#DIED} for the dead ones
+     * @param cellCount number of cells of the grid
+     */
+    static GameStateKey of(int[] cellsById, int cellCount, int clicksLeft) {
+        int bytesPerCell = getBytesPerCell(cellCount);
+        byte[] cells = new byte[cellsById.length * bytesPerCell];
+        int index = 0;
+        for (int cellById : cellsById) {
+            int cell = cellById + 1;
+            for (int shift = (bytesPerCell - 1) * 8; shift >= 0; shift -= 8) {
+                cells[index++] = (byte) (cell >>> shift);
+            }
+        }
+        return new GameStateKey(cells, clicksLeft);
+    }
+
+    /**
+     * @return the bytes needed by the cells from 1 to cellCount, big-endian
+     */
+    private static int getBytesPerCell(int cellCount) {
+        int bytesPerCell = 1;
+        while (bytesPerCell < 4 && cellCount >>> (bytesPerCell * 8) != 0) {
+            bytesPerCell++;
+        }
+        return bytesPerCell;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof GameStateKey)) {
+            return false;
+        }
+        GameStateKey other = (GameStateKey) o;
+        return hash == other.hash && clicksLeft == other.clicksLeft && Arrays.equals(cells, other.cells);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
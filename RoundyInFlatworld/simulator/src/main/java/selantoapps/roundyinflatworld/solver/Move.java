@@ -0,0 +1,32 @@
+package selantoapps.roundyinflatworld.solver;
+
+import selantoapps.roundyinflatworld.settings.Direction;
+
+/**
+ * A click on a roundy together with the direction it goes for: the random choice of the game
+ * made explicit.
+ */
+public final class Move {
+
+    private final int roundyId;
+
+    private final Direction direction;
+
+    public Move(int roundyId, Direction direction) {
+        this.roundyId = roundyId;
+        this.direction = direction;
+    }
+
+    public int getRoundyId() {
+        return roundyId;
+    }
+
+    public Direction getDirection() {
+        return direction;
+    }
+
+    @Override
+    public String toString() {
+        return roundyId + " " + direction.name();
+    }
+}
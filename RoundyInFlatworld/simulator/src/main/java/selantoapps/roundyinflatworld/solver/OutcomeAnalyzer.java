@@ -0,0 +1,382 @@
+package selantoapps.roundyinflatworld.solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import selantoapps.roundyinflatworld.controller.Flatworld;
+import selantoapps.roundyinflatworld.model.Chain;
+import selantoapps.roundyinflatworld.model.Roundy;
+import selantoapps.roundyinflatworld.settings.Direction;
+import selantoapps.roundyinflatworld.utils.JavaRandomSource;
+
+/**
+ * Computes the exact chance of each roundy to be still in the grid after some clicks.
+ * <p>
+ * The roundy clicked is chosen by a {@link ClickPolicy}, the direction it goes for as the game
+ * does: {@link Flatworld#click(int)} picks one of the roundies the clicked one can hit, each with
+ * the same chance, so a direction is taken with a chance proportional to the roundies it can hit
+ * there. The chances are computed by expectimax over the boards reached: the average over the
+ * directions, then over the roundies clicked for a random policy, or the best roundy for the
+ * others. A game where nobody can move anymore ends before its clicks.
+ * <p>
+ * Two clicks on different lines lead to the same board in any order, so the chances of each board
+ * are kept in a {@link ClockCache} by {@link GameStateKey}: memory stays within its capacity
+ * however many boards the analysis goes through. The boards reached by the first click are
+ * analyzed in parallel, sharing the cache. Each board is expanded on its own {@link Flatworld}
+ * with {@link Flatworld#predictClick(int, Direction)}, so the moves follow the rules of the game
+ * exactly.
+ * <p>
+ * Usage: OutcomeAnalyzer gridSize roundyCount clicks [seed [policy [cacheCapacity [parallelism]]]],
+ * policy being uniform, protect:id or attack:id. The cache capacity defaults to the boards which
+ * fit in half the maximum heap, as estimated by {@link #getDefaultCacheCapacity(int)}, and to at
+ * most 1048576 boards.
+ */
+public class OutcomeAnalyzer {
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private static final int MAX_DEFAULT_CACHE_CAPACITY = 1 << 20;
+
+    // bytes of a board in the cache besides its cells and chances: the headers of the key, of its
+    // cells and of the chances, the node and the slot of the map and the slot of the clock
+    private static final int CACHE_ENTRY_OVERHEAD = 128;
+
+    // scores closer than this are a tie, whatever the rounding of the sums which led to them
+    private static final double TIE = 1e-9;
+
+    private final int gridSize;
+    private final int roundyCount;
+    private final int parallelism;
+    private final ClickPolicy policy;
+    private final ClockCache<GameStateKey, double[]> cache;
+
+    private final ThreadLocal<Search> searches = ThreadLocal.withInitial(Search::new);
+
+    /**
+     * @param cacheCapacity maximum number of boards whose chances are kept
+     */
+    public OutcomeAnalyzer(int gridSize, int roundyCount, ClickPolicy policy, int cacheCapacity, int parallelism) {
+        this.gridSize = gridSize;
+        this.roundyCount = roundyCount;
+        this.policy = policy;
+        this.parallelism = parallelism;
+        cache = new ClockCache<>(cacheCapacity);
+    }
+
+    /**
+     * @param cellsById cell of each roundy, {@link FlatworldSolver#DIED} for the roundies not in
+     *                  the grid
+     * @param clicks    number of clicks played
+     * @return chance of each roundy to be in the grid after the clicks, by id
+     */
+    public double[] analyze(final int[] cellsById, final int clicks) throws InterruptedException {
+        if (clicks == 0) {
+            return alive(cellsById);
+        }
+        Moves moves = searches.get().expand(cellsById);
+        if (moves == null) {
+            return alive(cellsById);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            List<Future<double[]>> futures = new ArrayList<>(moves.children.length);
+            for (final int[] child : moves.children) {
+                futures.add(executor.submit(() -> searches.get().evaluate(child, clicks - 1)));
+            }
+            double[][] childValues = new double[futures.size()][];
+            for (int i = 0; i < childValues.length; i++) {
+                try {
+                    childValues[i] = futures.get(i).get();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+            return combine(moves, childValues);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public long getCacheHitCount() {
+        return cache.getHitCount();
+    }
+
+    public long getCacheMissCount() {
+        return cache.getMissCount();
+    }
+
+    public int getCacheSize() {
+        return cache.size();
+    }
+
+    private double[] alive(int[] cellsById) {
+        double[] value = new double[roundyCount];
+        for (int id = 0; id < roundyCount; id++) {
+            value[id] = cellsById[id] == FlatworldSolver.DIED ? 0 : 1;
+        }
+        return value;
+    }
+
+    /**
+     * @param childValues chances after each move, in the order of the moves
+     * @return chances before the moves, as chosen by the policy
+     */
+    private double[] combine(Moves moves, double[][] childValues) {
+        double[] value = new double[roundyCount];
+        int clickableCount = moves.roundyStarts.length - 1;
+        if (policy.isRandom()) {
+            double roundyWeight = 1.0 / clickableCount;
+            for (int move = 0; move < childValues.length; move++) {
+                add(value, childValues[move], roundyWeight * moves.weights[move]);
+            }
+            return value;
+        }
+        double[] candidate = new double[roundyCount];
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (int r = 0; r < clickableCount; r++) {
+            Arrays.fill(candidate, 0);
+            for (int move = moves.roundyStarts[r]; move < moves.roundyStarts[r + 1]; move++) {
+                add(candidate, childValues[move], moves.weights[move]);
+            }
+            // ties go to the smallest id
+            double score = policy.score(candidate);
+            if (score > bestScore + TIE) {
+                bestScore = score;
+                System.arraycopy(candidate, 0, value, 0, roundyCount);
+            }
+        }
+        return value;
+    }
+
+    private static void add(double[] target, double[] values, double weight) {
+        for (int id = 0; id < target.length; id++) {
+            target[id] += values[id] * weight;
+        }
+    }
+
+    /**
+     * The boards reached by one click, grouped by roundy clicked.
+     */
+    private static final class Moves {
+
+        // moves of the i-th roundy clicked, from roundyStarts[i] to roundyStarts[i + 1] excluded
+        final int[] roundyStarts;
+
+        // cell of each roundy by id after each move
+        final int[][] children;
+
+        // chance of each move once its roundy is clicked
+        final double[] weights;
+
+        Moves(int[] roundyStarts, int[][] children, double[] weights) {
+            this.roundyStarts = roundyStarts;
+            this.children = children;
+            this.weights = weights;
+        }
+    }
+
+    /**
+     * The analysis of a single thread, on its own Flatworld.
+     */
+    private class Search {
+
+        private final Flatworld flatworld = new Flatworld(gridSize, roundyCount, new JavaRandomSource());
+
+        Search() {
+            // boards are loaded again and again
+            flatworld.setAllocationFree(true);
+        }
+
+        double[] evaluate(int[] cellsById, int clicksLeft) {
+            if (clicksLeft == 0) {
+                return alive(cellsById);
+            }
+            GameStateKey key = GameStateKey.of(cellsById, gridSize * gridSize, clicksLeft);
+            double[] value = cache.get(key);
+            if (value != null) {
+                return value;
+            }
+            if (clicksLeft == 1) {
+                value = evaluateLastClick(cellsById);
+                cache.put(key, value);
+                return value;
+            }
+            Moves moves = expand(cellsById);
+            if (moves == null) {
+                value = alive(cellsById);
+            } else {
+                // the world is loaded again by each child, so the moves are all listed first
+                double[][] childValues = new double[moves.children.length][];
+                for (int move = 0; move < childValues.length; move++) {
+                    childValues[move] = evaluate(moves.children[move], clicksLeft - 1);
+                }
+                value = combine(moves, childValues);
+            }
+            cache.put(key, value);
+            return value;
+        }
+
+        /**
+         * Like {@link #combine(Moves, double[][])} on the boards reached by one click, which only
+         * differ from this one by the roundy dead.
+         */
+        private double[] evaluateLastClick(int[] cellsById) {
+            load(cellsById);
+            double[] value = alive(cellsById);
+            int clickableCount = 0;
+            for (Roundy roundy : flatworld.getRoundies()) {
+                if (roundy != null && roundy.hasCollisions()) {
+                    clickableCount++;
+                }
+            }
+            if (clickableCount == 0) {
+                return value;
+            }
+            double[] candidate = policy.isRandom() ? value : value.clone();
+            double bestScore = Double.NEGATIVE_INFINITY;
+            double[] best = null;
+            for (Roundy roundy : flatworld.getRoundies()) {
+                if (roundy == null || !roundy.hasCollisions()) {
+                    continue;
+                }
+                double roundyWeight = policy.isRandom() ? 1.0 / clickableCount : 1;
+                if (!policy.isRandom()) {
+                    System.arraycopy(value, 0, candidate, 0, roundyCount);
+                }
+                for (Direction direction : DIRECTIONS) {
+                    if (roundy.hasCollisionTowards(direction)) {
+                        int deadId = flatworld.predictDeath(roundy.getId(), direction);
+                        candidate[deadId] -= roundyWeight * roundy.getCollisionCount(direction)
+                                / roundy.getCollisionCount();
+                    }
+                }
+                if (!policy.isRandom()) {
+                    // ties go to the smallest id
+                    double score = policy.score(candidate);
+                    if (score > bestScore + TIE) {
+                        bestScore = score;
+                        best = candidate.clone();
+                    }
+                }
+            }
+            return policy.isRandom() ? value : best;
+        }
+
+        /**
+         * @return the moves of the board, null if nobody can move
+         */
+        Moves expand(int[] cellsById) {
+            load(cellsById);
+            int moveCount = 0;
+            int clickableCount = 0;
+            for (Roundy roundy : flatworld.getRoundies()) {
+                if (roundy != null && roundy.hasCollisions()) {
+                    clickableCount++;
+                    moveCount += Integer.bitCount(roundy.getCollisionDirections());
+                }
+            }
+            if (clickableCount == 0) {
+                return null;
+            }
+            int[] roundyStarts = new int[clickableCount + 1];
+            int[][] children = new int[moveCount][];
+            double[] weights = new double[moveCount];
+            int r = 0;
+            int move = 0;
+            for (Roundy roundy : flatworld.getRoundies()) {
+                if (roundy == null || !roundy.hasCollisions()) {
+                    continue;
+                }
+                roundyStarts[r++] = move;
+                for (Direction direction : DIRECTIONS) {
+                    if (!roundy.hasCollisionTowards(direction)) {
+                        continue;
+                    }
+                    Chain chain = flatworld.predictClick(roundy.getId(), direction);
+                    // each roundy of the chain stops in the cell of the next one, the last one dies
+                    int[] child = cellsById.clone();
+                    for (int i = 0; i < chain.getLength() - 1; i++) {
+                        child[chain.getRoundyId(i)] = chain.getCellIndex(i + 1);
+                    }
+                    child[chain.getDeadRoundyId()] = FlatworldSolver.DIED;
+                    children[move] = child;
+                    weights[move] = (double) roundy.getCollisionCount(direction) / roundy.getCollisionCount();
+                    move++;
+                }
+            }
+            roundyStarts[r] = move;
+            return new Moves(roundyStarts, children, weights);
+        }
+
+        private void load(int[] cellsById) {
+            flatworld.init();
+            for (int id = 0; id < cellsById.length; id++) {
+                if (cellsById[id] != FlatworldSolver.DIED) {
+                    flatworld.placeRoundy(id, cellsById[id]);
+                }
+            }
+            flatworld.findUnhappyRoundies();
+        }
+    }
+
+    static ClickPolicy parsePolicy(String policy) {
+        if (policy.equals("uniform")) {
+            return ClickPolicy.uniform();
+        } else if (policy.startsWith("protect:")) {
+            return ClickPolicy.protect(Integer.parseInt(policy.substring("protect:".length())));
+        } else if (policy.startsWith("attack:")) {
+            return ClickPolicy.attack(Integer.parseInt(policy.substring("attack:".length())));
+        }
+        throw new IllegalArgumentException("Unknown policy " + policy);
+    }
+
+    /**
+     * @return the number of boards whose chances fit in half the maximum heap, each one taking the
+     * chance of each roundy as a double and its cell in at most 4 bytes, but no more than
+     * {@link #MAX_DEFAULT_CACHE_CAPACITY}
+     */
+    static int getDefaultCacheCapacity(int roundyCount) {
+        long entryBytes = CACHE_ENTRY_OVERHEAD + (8L + 4L) * roundyCount;
+        long capacity = Runtime.getRuntime().maxMemory() / 2 / entryBytes;
+        return (int) Math.max(1, Math.min(MAX_DEFAULT_CACHE_CAPACITY, capacity));
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int gridSize = Integer.parseInt(args[0]);
+        int roundyCount = Integer.parseInt(args[1]);
+        int clicks = Integer.parseInt(args[2]);
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : System.nanoTime();
+        ClickPolicy policy = args.length > 4 ? parsePolicy(args[4]) : ClickPolicy.uniform();
+        int cacheCapacity = args.length > 5 ? Integer.parseInt(args[5]) : getDefaultCacheCapacity(roundyCount);
+        int parallelism = args.length > 6 ? Integer.parseInt(args[6])
+                : Runtime.getRuntime().availableProcessors();
+
+        // a random board, placed as the game does
+        Flatworld flatworld = new Flatworld(gridSize, roundyCount, new JavaRandomSource(new java.util.Random(seed)));
+        flatworld.init();
+        int[] cellsById = new int[roundyCount];
+        for (int id = 0; id < roundyCount; id++) {
+            cellsById[id] = flatworld.placeRoundy(id).getCellIndex();
+        }
+        System.out.println("board " + gridSize + "x" + gridSize + ", seed " + seed + ", policy " + policy
+                + ", cells " + Arrays.toString(cellsById));
+
+        long start = System.nanoTime();
+        OutcomeAnalyzer analyzer = new OutcomeAnalyzer(gridSize, roundyCount, policy, cacheCapacity, parallelism);
+        double[] survival = analyzer.analyze(cellsById, clicks);
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+        for (int id = 0; id < roundyCount; id++) {
+            System.out.printf(Locale.US, "roundy %d survives %d clicks: %.6f%n", id, clicks, survival[id]);
+        }
+        System.out.printf(Locale.US, "%d ms, cache %d boards, %d hits, %d misses%n", elapsedMillis,
+                analyzer.getCacheSize(), analyzer.getCacheHitCount(), analyzer.getCacheMissCount());
+    }
+}